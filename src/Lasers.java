@@ -1,6 +1,7 @@
 import javafx.application.Application;
 
 import java.io.FileNotFoundException;
+import java.util.Arrays;
 
 import gui.LasersGUI;
 import ptui.ControllerPTUI;
@@ -17,7 +18,10 @@ import ptui.LasersPTUI;
  * Here, the input file of commands from the file is optional<br>
  * <br>
  * 2. JavaFX GUI mode:<br>
- *     java Lasers gui safe-file<br>
+ *     java Lasers gui safe-file [--timeout=ms] [--max-nodes=N]<br>
+ * <br>
+ * Here, the limits on how long a solve or hint may search are optional,
+ * 0 meaning no limit<br>
  * <br>
  * @author James Heliotis @ RIT CS
  * @author Sean Strout @ RIT CS
@@ -30,7 +34,8 @@ public class Lasers {
      * Displays the usage message and exits the program.
      */
     private static void usage() {
-        System.err.println("Usage: java Lasers (gui | ptui) safe-file [input]");
+        System.err.println("Usage: java Lasers ptui safe-file [input]");
+        System.err.println("       java Lasers gui safe-file [--timeout=ms] [--max-nodes=N]");
         System.exit(-1);
     }
 
@@ -45,33 +50,34 @@ public class Lasers {
         UIMode mode = UIMode.UNKNOWN;
         String safeFile = null;
         String inputFile = null;
-        switch (args.length) {
-            case 3:
-                inputFile = args[2];
-            case 2:
-                safeFile = args[1];
-                try {
-                    mode = UIMode.valueOf(args[0].toUpperCase());
-                } catch( IllegalArgumentException iae ) {
-                    usage();
-                }
-                break;
-            default:
-                usage();
+        if (args.length < 2) {
+            usage();
+        }
+        safeFile = args[1];
+        try {
+            mode = UIMode.valueOf(args[0].toUpperCase());
+        } catch( IllegalArgumentException iae ) {
+            usage();
+        }
+        // the GUI takes its search limits after the safe file, the PTUI an input file
+        if (mode == UIMode.PTUI && args.length == 3) {
+            inputFile = args[2];
+        } else if (mode == UIMode.PTUI && args.length > 3) {
+            usage();
         }
 
         // now either launch the GUI or create the PTUI and pass control to it
         try {
             switch (mode) {
                 case GUI:
-                    // this launches the GUI and passes in the safe file.
-                    Application.launch(LasersGUI.class, safeFile);
+                    // this launches the GUI and passes in the safe file and any search limits.
+                    Application.launch(LasersGUI.class, Arrays.copyOfRange(args, 1, args.length));
                     break;
                 case PTUI:
                     // create the "view" first
                     LasersPTUI ptui = new LasersPTUI(safeFile);
                     // now create the "controller"
-                    ControllerPTUI ctrlr = new ControllerPTUI(ptui.getModel());
+                    ControllerPTUI ctrlr = new ControllerPTUI(ptui);
                     // now pass control to the run method of the controller
                     ctrlr.run(inputFile);
                     break;
@@ -1,10 +1,20 @@
 package backtracking;
 
 import java.awt.image.AreaAveragingScaleFilter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class represents the classic recursive backtracking algorithm.
@@ -24,6 +34,15 @@ public class Backtracker {
 
     private boolean debug;
 
+    /** the frames solveIterative starts with; it doubles them when it goes deeper */
+    private static final int INITIAL_FRAMES = 1024;
+
+    /** Where to count the configurations looked at. May be null */
+    private SolverStats stats;
+
+    /** When to give up searching. May be null */
+    private SearchLimit limit;
+
     /**
      * An ArrayList to hold the path of configurations to reach a verified solution
      */
@@ -41,6 +60,25 @@ public class Backtracker {
         }
     }
 
+    /**
+     * Sets where the configurations looked at are counted
+     *
+     * @param stats the stats to count into, or null to stop counting
+     */
+    public void setStats(SolverStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Sets when to give up searching. A search that gives up returns no
+     * solution, and the limit's isStopped() is then true.
+     *
+     * @param limit the limit, or null to search until done
+     */
+    public void setLimit(SearchLimit limit) {
+        this.limit = limit;
+    }
+
     /**
      * A utility routine for printing out various debug messages.
      *
@@ -61,7 +99,24 @@ public class Backtracker {
      * @return A solution config, or null if no solution
      */
     public Optional<Configuration> solve(Configuration config) {
+        return solve(config, 0);
+    }
+
+    /**
+     * The recursive part of solve.
+     *
+     * @param config the configuration to search from
+     * @param depth  how many moves it is from the starting configuration
+     * @return A solution config, or empty if no solution
+     */
+    private Optional<Configuration> solve(Configuration config, int depth) {
         debugPrint("Current config", config);
+        if (this.stats != null) {
+            this.stats.nodeExpanded(depth);
+        }
+        if (this.limit != null && this.limit.reached()) {
+            return Optional.empty();
+        }
         if (config.isGoal()) {
             debugPrint("\tGoal config", config);
             return Optional.of(config);
@@ -69,7 +124,7 @@ public class Backtracker {
             for (Configuration child : config.getSuccessors()) {
                 if (child.isValid()) {
                     debugPrint("\tValid successor", child);
-                    Optional<Configuration> sol = solve(child);
+                    Optional<Configuration> sol = solve(child, depth + 1);
                     if (sol.isPresent()) {
                         return sol;
                     }
@@ -82,6 +137,38 @@ public class Backtracker {
         return Optional.empty();
     }
 
+    /**
+     * Try to find a solution, counting the search as it goes, and hand the
+     * counters back with the solution. A configuration that can be searched in
+     * place is searched by solveIterative, and any other by solve. The stats set
+     * on this backtracker are counted into, or new ones if none are set, and the
+     * search is recorded as a Flight Recorder event.
+     *
+     * @param config A valid configuration
+     * @return the solution, if any, with the counters and time of the search
+     */
+    public SearchResult solveWithStats(Configuration config) {
+        SolverStats previous = this.stats;
+        SolverStats counted = previous != null ? previous : new SolverStats();
+        if (config instanceof SafeConfig) {
+            ((SafeConfig) config).setStats(counted);
+        }
+        this.stats = counted;
+        SolverEvents.Search event = SolverEvents.beginSearch("backtrack");
+        long start = System.nanoTime();
+        try {
+            Optional<Configuration> sol = config instanceof UndoableConfiguration
+                    ? solveIterative((UndoableConfiguration) config)
+                    : solve(config);
+            long elapsed = System.nanoTime() - start;
+            boolean stopped = this.limit != null && this.limit.isStopped();
+            SolverEvents.endSearch(event, counted, sol.isPresent(), stopped);
+            return new SearchResult(sol, counted, elapsed, stopped);
+        } finally {
+            this.stats = previous;
+        }
+    }
+
     /**
      * Find a goal configuration if it exists, and how to get there.
      *
@@ -90,8 +177,25 @@ public class Backtracker {
      * If there are none, return null.
      */
     public List<Configuration> solveWithPath(Configuration config) {
+        return solveWithPath(config, 0);
+    }
+
+    /**
+     * The recursive part of solveWithPath.
+     *
+     * @param config the configuration to search from
+     * @param depth  how many moves it is from the starting configuration
+     * @return the path to a goal configuration, or null if there is none
+     */
+    private List<Configuration> solveWithPath(Configuration config, int depth) {
 
         debugPrint("Current config", config);
+        if (this.stats != null) {
+            this.stats.nodeExpanded(depth);
+        }
+        if (this.limit != null && this.limit.reached()) {
+            return null;
+        }
         if (config.isGoal()) {
             debugPrint("\tGoal config", config);
             //If there is a solution make an ArrayList and start filling it with configurations
@@ -102,7 +206,7 @@ public class Backtracker {
             for (Configuration child : config.getSuccessors()) {
                 if (child.isValid()) {
                     debugPrint("\tValid successor", child);
-                    solveWithPath(child);
+                    solveWithPath(child, depth + 1);
                     //If the path ArrayList exits a solution was found
                     if(this.path != null) {
                         this.path.add(0, child);
@@ -116,4 +220,260 @@ public class Backtracker {
         }
         return null;
     }
+
+    /**
+     * Try to find a solution, if one exists, without creating a configuration per
+     * successor. Moves are applied to the one configuration given, and undone again
+     * when backtracking.
+     *
+     * @param config A valid configuration, which is left at the goal if one is found
+     * @return The solved config, or empty if no solution
+     */
+    public Optional<Configuration> solveInPlace(UndoableConfiguration config) {
+        if (searchInPlace(config, 0)) {
+            return Optional.of(config);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The recursive part of solveInPlace.
+     *
+     * @param config the configuration to search from
+     * @param depth  how many moves it is from the starting configuration
+     * @return true if config has been moved to a goal; false if there is no goal below it
+     */
+    private boolean searchInPlace(UndoableConfiguration config, int depth) {
+        debugPrint("Current config", config);
+        if (this.stats != null) {
+            this.stats.nodeExpanded(depth);
+        }
+        if (this.limit != null && this.limit.reached()) {
+            return false;
+        }
+        if (config.isGoal()) {
+            debugPrint("\tGoal config", config);
+            return true;
+        }
+        int moves = config.getMoveCount();
+        for (int move = 0; move < moves; move++) {
+            if (config.makeMove(move)) {
+                debugPrint("\tValid successor", config);
+                if (searchInPlace(config, depth + 1)) {
+                    return true;
+                }
+            } else {
+                debugPrint("\tInvalid successor", config);
+            }
+            // explicit backtracking happens here
+            config.undoMove();
+        }
+        return false;
+    }
+
+    /**
+     * Try to find a solution, if one exists, searching in place like solveInPlace
+     * but without recursion. The path from the starting configuration is kept on a
+     * stack of frames made of two primitive arrays, the next move to try and the
+     * number of moves, while the moves themselves stay on the configuration's own
+     * undo trail. The search is the same as solveInPlace's, in the same order, but
+     * its depth is not limited by the thread's stack, and it allocates nothing per
+     * configuration looked at.
+     *
+     * @param config A valid configuration, which is left at the goal if one is found
+     * @return The solved config, or empty if no solution
+     */
+    public Optional<Configuration> solveIterative(UndoableConfiguration config) {
+        int[] nextMove = new int[INITIAL_FRAMES];
+        int[] moveCount = new int[INITIAL_FRAMES];
+        int depth = 0;
+        if (enterFrame(config, 0)) {
+            return Optional.of(config);
+        }
+        if (this.limit != null && this.limit.isStopped()) {
+            return Optional.empty();
+        }
+        moveCount[0] = config.getMoveCount();
+        while (true) {
+            if (nextMove[depth] < moveCount[depth]) {
+                int move = nextMove[depth]++;
+                if (!config.makeMove(move)) {
+                    debugPrint("\tInvalid successor", config);
+                    config.undoMove();
+                    continue;
+                }
+                debugPrint("\tValid successor", config);
+                if (enterFrame(config, depth + 1)) {
+                    return Optional.of(config);
+                }
+                if (this.limit != null && this.limit.isStopped()) {
+                    return Optional.empty();
+                }
+                depth++;
+                if (depth == nextMove.length) {
+                    nextMove = Arrays.copyOf(nextMove, 2 * depth);
+                    moveCount = Arrays.copyOf(moveCount, 2 * depth);
+                }
+                nextMove[depth] = 0;
+                moveCount[depth] = config.getMoveCount();
+            } else {
+                // explicit backtracking happens here
+                if (depth == 0) {
+                    return Optional.empty();
+                }
+                depth--;
+                config.undoMove();
+            }
+        }
+    }
+
+    /**
+     * Looks at the configuration just moved to by solveIterative, as searchInPlace
+     * does on entry.
+     *
+     * @param config the configuration
+     * @param depth  how many moves it is from the starting configuration
+     * @return true if it is a goal
+     */
+    private boolean enterFrame(UndoableConfiguration config, int depth) {
+        debugPrint("Current config", config);
+        if (this.stats != null) {
+            this.stats.nodeExpanded(depth);
+        }
+        if (this.limit != null && this.limit.reached(depth)) {
+            return false;
+        }
+        if (config.isGoal()) {
+            debugPrint("\tGoal config", config);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Every solution below a configuration, found lazily: each call to next()
+     * searches only as far as the next goal. A goal is not searched below, so
+     * each solution is found once.
+     *
+     * @param config the starting configuration
+     * @return an iterator over the goal configurations, in the order solve() meets them
+     */
+    public Iterator<Configuration> solutions(Configuration config) {
+        return Spliterators.iterator(spliterator(config));
+    }
+
+    /**
+     * Every solution below a configuration as a lazy, sequential stream, so a
+     * caller can take the first few, filter them, or write them out one at a
+     * time. Use stream(config).parallel() to search with the common pool.
+     *
+     * @param config the starting configuration
+     * @return a stream of the goal configurations
+     */
+    public Stream<Configuration> stream(Configuration config) {
+        return StreamSupport.stream(spliterator(config), false);
+    }
+
+    /**
+     * Every solution below a configuration as a spliterator. The search keeps a
+     * stack of the configurations still to look at, and splitting hands the
+     * bottom half of the stack, the biggest subtrees, to a new spliterator.
+     * Split parts search different subtrees, so the stats are safe to share, but
+     * the limit of this backtracker is only checked by the part it was set for.
+     *
+     * @param config the starting configuration
+     * @return a spliterator of the goal configurations
+     */
+    public Spliterator<Configuration> spliterator(Configuration config) {
+        Deque<Configuration> pending = new ArrayDeque<>();
+        pending.push(config);
+        return new SolutionSpliterator(pending, this.limit);
+    }
+
+    /**
+     * A depth-first search that stops at every goal, over a stack of the
+     * configurations still to look at
+     */
+    private class SolutionSpliterator implements Spliterator<Configuration> {
+        private final Deque<Configuration> pending;
+        private final SearchLimit limit;
+
+        private SolutionSpliterator(Deque<Configuration> pending, SearchLimit limit) {
+            this.pending = pending;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Configuration> action) {
+            while (!this.pending.isEmpty()) {
+                Configuration config = this.pending.pop();
+                debugPrint("Current config", config);
+                if (stats != null) {
+                    stats.nodeExpanded();
+                }
+                if (this.limit != null && this.limit.reached()) {
+                    this.pending.clear();
+                    return false;
+                }
+                if (config.isGoal()) {
+                    debugPrint("\tGoal config", config);
+                    action.accept(config);
+                    return true;
+                }
+                expand(config);
+            }
+            return false;
+        }
+
+        /**
+         * Pushes the valid successors of a configuration, so the first is looked at first
+         */
+        private void expand(Configuration config) {
+            Collection<Configuration> successors = config.getSuccessors();
+            Configuration[] valid = new Configuration[successors.size()];
+            int count = 0;
+            for (Configuration child : successors) {
+                if (child.isValid()) {
+                    debugPrint("\tValid successor", child);
+                    valid[count++] = child;
+                } else {
+                    debugPrint("\tInvalid successor", child);
+                }
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                this.pending.push(valid[i]);
+            }
+        }
+
+        @Override
+        public Spliterator<Configuration> trySplit() {
+            //A single configuration left is opened up so that its subtrees can be shared
+            while (this.pending.size() == 1 && !this.pending.peek().isGoal()) {
+                Configuration config = this.pending.pop();
+                if (stats != null) {
+                    stats.nodeExpanded();
+                }
+                expand(config);
+            }
+            int half = this.pending.size() / 2;
+            if (half == 0) {
+                return null;
+            }
+            Deque<Configuration> split = new ArrayDeque<>();
+            for (int i = 0; i < half; i++) {
+                split.push(this.pending.pollLast());
+            }
+            return new SolutionSpliterator(split, null);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.pending.isEmpty() ? 0 : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL;
+        }
+    }
 }
@@ -0,0 +1,431 @@
+package backtracking;
+
+import model.LasersModel;
+import model.SafeCorpus;
+import model.SafeParser;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Solves many safes in one JVM, several at a time on a fixed pool of threads.
+ * Each safe is searched in place by its own backtracker, under its own time
+ * limit. A file may hold several safes, which are solved one after another.
+ * A result line is written for every safe, in the order of the files,
+ * followed by a summary of the throughput and latency of the whole batch.
+ *
+ * Run from SafeSolver as:
+ *     java SafeSolver -batch dir|glob [-threads N] [-timeout ms] [-out results.csv] [-cache N]
+ *
+ * A directory means every file in it. A glob such as "safes/**.txt" is matched
+ * against the files under the part of it before the first wildcard. Binary
+ * SafeCorpus files are recognised and mapped, and their safes are split into
+ * chunks so one big corpus is still solved by every thread. With -cache, up to
+ * N solutions are kept in a SolutionCache, so duplicates of a safe, rotated or
+ * mirrored or not, are only solved once.
+ *
+ * -threads must be at least 1, and -timeout and -cache at least 0, with 0
+ * meaning no limit and no cache. A bad or missing value prints the usage.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class BatchSolver {
+    static final String USAGE =
+            "Usage: java SafeSolver -batch dir|glob [-threads N] [-timeout ms] [-out results.csv] [-cache N]";
+
+    /** how many safes of a corpus are solved by one task */
+    private static final int CORPUS_CHUNK = 64;
+
+    /** How a safe of the batch turned out */
+    public enum Status { SOLVED, UNSOLVABLE, TIMEOUT, ERROR }
+
+    /** The result of one safe */
+    public static class Result {
+        private final Path file;
+        private final int puzzle;
+        private final Status status;
+        private final long nodes;
+        private final long elapsedNanos;
+
+        private Result(Path file, int puzzle, Status status, long nodes, long elapsedNanos) {
+            this.file = file;
+            this.puzzle = puzzle;
+            this.status = status;
+            this.nodes = nodes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * getter function for the safe file
+         */
+        public Path getFile() { return this.file; }
+
+        /**
+         * getter function for which safe of the file this is, from 0
+         */
+        public int getPuzzle() { return this.puzzle; }
+
+        /**
+         * getter function for how the safe turned out
+         */
+        public Status getStatus() { return this.status; }
+
+        /**
+         * getter function for the configurations looked at
+         */
+        public long getNodes() { return this.nodes; }
+
+        /**
+         * getter function for the time taken, in nanoseconds
+         */
+        public long getElapsedNanos() { return this.elapsedNanos; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s,%d,%s,%d,%.3f", this.file, this.puzzle,
+                    this.status.name().toLowerCase(Locale.ROOT),
+                    this.nodes, this.elapsedNanos / 1e6);
+        }
+    }
+
+    /** the number of threads solving */
+    private final int threads;
+
+    /** how long each safe may take, or 0 for no limit */
+    private final long timeoutMillis;
+
+    /** the solutions of safes already solved, shared by every thread. May be null */
+    private SolutionCache cache;
+
+    /**
+     * Initialize a new batch solver.
+     *
+     * @param threads       the number of safes solved at once, at least 1
+     * @param timeoutMillis how long each safe may take, or 0 for no limit
+     */
+    public BatchSolver(int threads, long timeoutMillis) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeout must not be negative: " + timeoutMillis);
+        }
+        this.threads = threads;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sets the cache that safes are looked up in before they are solved, so
+     * repeated, rotated or mirrored safes are only solved once
+     *
+     * @param cache the cache, or null to solve every safe
+     */
+    public void setCache(SolutionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Solves every safe.
+     *
+     * @param files the safe files
+     * @return the result of each safe, in the order of the files
+     * @throws InterruptedException if interrupted while waiting for the results
+     */
+    public List<Result> solveAll(List<Path> files) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            List<Future<List<Result>>> futures = new ArrayList<>();
+            for (Path file : files) {
+                if (SafeCorpus.isCorpus(file)) {
+                    //a corpus is mapped once and its safes handed out in chunks
+                    SafeCorpus corpus;
+                    try {
+                        corpus = new SafeCorpus(file);
+                    } catch (IOException ioe) {
+                        futures.add(pool.submit(() -> Collections.singletonList(
+                                new Result(file, 0, Status.ERROR, 0, 0))));
+                        continue;
+                    }
+                    for (int first = 0; first < corpus.size(); first += CORPUS_CHUNK) {
+                        int from = first;
+                        int to = Math.min(corpus.size(), first + CORPUS_CHUNK);
+                        futures.add(pool.submit(() -> solveCorpus(file, corpus, from, to)));
+                    }
+                } else {
+                    futures.add(pool.submit(() -> solveFile(file)));
+                }
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<List<Result>> future : futures) {
+                try {
+                    results.addAll(future.get());
+                } catch (ExecutionException ee) {
+                    //solveOne catches what a bad safe can throw, so this is a bug
+                    throw new IllegalStateException(ee.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Solves a range of the safes of a corpus, one after another.
+     *
+     * @param file   the corpus file
+     * @param corpus the corpus
+     * @param from   the first safe to solve
+     * @param to     the safe after the last one to solve
+     * @return how each safe turned out
+     */
+    public List<Result> solveCorpus(Path file, SafeCorpus corpus, int from, int to) {
+        List<Result> results = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            long start = System.nanoTime();
+            try {
+                results.add(solveOne(file, i, corpus.get(i)));
+            } catch (RuntimeException e) {
+                //a broken safe in the corpus
+                results.add(new Result(file, i, Status.ERROR, 0, System.nanoTime() - start));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Solves every safe of a file, one after another.
+     *
+     * @param file the safe file
+     * @return how each safe turned out. A file that cannot be read or parsed gives
+     *         one error result, after the results of any safes before the bad one
+     */
+    public List<Result> solveFile(Path file) {
+        List<Result> results = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            SafeParser parser = new SafeParser(file.toString());
+            while (parser.hasNext()) {
+                results.add(solveOne(file, results.size(), new LasersModel(parser.next())));
+                start = System.nanoTime();
+            }
+            if (results.isEmpty()) {
+                results.add(new Result(file, 0, Status.ERROR, 0, System.nanoTime() - start));
+            }
+        } catch (IOException | RuntimeException e) {
+            //not a safe file, or a malformed one
+            results.add(new Result(file, results.size(), Status.ERROR, 0, System.nanoTime() - start));
+        }
+        return results;
+    }
+
+    /**
+     * Solves one safe under the time limit.
+     *
+     * @param file   the file the safe came from
+     * @param puzzle which safe of the file it is
+     * @param safe   the safe
+     * @return how it turned out
+     */
+    public Result solveOne(Path file, int puzzle, LasersModel safe) {
+        long start = System.nanoTime();
+        SolverStats stats = new SolverStats();
+        try {
+            SolutionCache.Lookup lookup = null;
+            if (this.cache != null) {
+                lookup = this.cache.lookup(safe);
+                if (lookup.isHit()) {
+                    Status status = lookup.getSolution().isPresent() ? Status.SOLVED : Status.UNSOLVABLE;
+                    return new Result(file, puzzle, status, 0, System.nanoTime() - start);
+                }
+            }
+            SafeConfig config = new SafeConfig(safe);
+            config.setStats(stats);
+            Backtracker bt = new Backtracker(false);
+            SearchLimit limit = new SearchLimit(this.timeoutMillis, 0);
+            bt.setStats(stats);
+            bt.setLimit(limit);
+            //the rules decide most spots before the search starts, and may show there is no solution
+            Optional<Configuration> sol = config.presolve().isConsistent()
+                    ? bt.solveWithStats(config).getSolution() : Optional.empty();
+            Status status = sol.isPresent() ? Status.SOLVED : limit.isStopped() ? Status.TIMEOUT : Status.UNSOLVABLE;
+            //a safe that ran out of time is not known to be unsolvable
+            if (lookup != null && status != Status.TIMEOUT) {
+                lookup.store(sol.map(solved -> ((SafeConfig) solved).getSafe()));
+            }
+            return new Result(file, puzzle, status, stats.getNodes(), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            return new Result(file, puzzle, Status.ERROR, stats.getNodes(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Finds the safe files named by a directory or a glob.
+     *
+     * @param pattern a directory, or a glob of files
+     * @return the files, sorted by name
+     * @throws IOException if the files could not be listed
+     */
+    public static List<Path> findSafes(String pattern) throws IOException {
+        Path dir = Paths.get(pattern);
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        }
+        //the directory is the part of the glob before its first wildcard
+        int wildcard = pattern.length();
+        for (char special : new char[]{'*', '?', '[', '{'}) {
+            int at = pattern.indexOf(special);
+            if (at >= 0 && at < wildcard) {
+                wildcard = at;
+            }
+        }
+        int slash = pattern.lastIndexOf('/', wildcard);
+        Path base = Paths.get(slash < 0 ? "." : pattern.substring(0, slash + 1));
+        PathMatcher matcher = base.getFileSystem().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> files = Files.walk(base)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(slash < 0 ? base.relativize(p) : p))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Runs a batch from the command line arguments after -batch.
+     *
+     * @param args the pattern of the safe files followed by the options
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println(USAGE);
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        long timeoutMillis = 0;
+        String out = null;
+        int cacheEntries = 0;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = (int) SafeSolver.optionNumber(args, i++, 1, Integer.MAX_VALUE, USAGE);
+                    if (threads < 0) {
+                        return;
+                    }
+                    break;
+                case "-timeout":
+                    timeoutMillis = SafeSolver.optionNumber(args, i++, 0, Long.MAX_VALUE, USAGE);
+                    if (timeoutMillis < 0) {
+                        return;
+                    }
+                    break;
+                case "-out":
+                    out = SafeSolver.optionValue(args, i++, USAGE);
+                    if (out == null) {
+                        return;
+                    }
+                    break;
+                case "-cache":
+                    cacheEntries = (int) SafeSolver.optionNumber(args, i++, 0, Integer.MAX_VALUE, USAGE);
+                    if (cacheEntries < 0) {
+                        return;
+                    }
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    System.out.println(USAGE);
+                    return;
+            }
+        }
+
+        List<Path> files = findSafes(args[0]);
+        if (files.isEmpty()) {
+            System.out.println("No safe files match " + args[0]);
+            return;
+        }
+        BatchSolver batch = new BatchSolver(threads, timeoutMillis);
+        SolutionCache cache = null;
+        if (cacheEntries > 0) {
+            cache = new SolutionCache(cacheEntries, Runtime.getRuntime().maxMemory() / 4);
+            batch.setCache(cache);
+        }
+
+        // start the clock
+        long start = System.nanoTime();
+        List<Result> results = batch.solveAll(files);
+        long elapsed = System.nanoTime() - start;
+
+        // the result of every safe, to the file if there is one
+        PrintWriter writer = out == null ? new PrintWriter(System.out) : new PrintWriter(out);
+        writer.println("file,puzzle,status,nodes,ms");
+        for (Result result : results) {
+            writer.println(result);
+        }
+        writer.flush();
+        if (out != null) {
+            writer.close();
+        }
+
+        System.out.println(summary(results, elapsed, threads));
+        if (cache != null) {
+            System.out.println(cache);
+        }
+    }
+
+    /**
+     * The summary of a batch: how the safes turned out, the throughput, and the
+     * median and 99th percentile time of a safe.
+     *
+     * @param results      the results of the batch
+     * @param elapsedNanos the wall clock time of the whole batch
+     * @param threads      the number of threads solving
+     * @return the summary
+     */
+    static String summary(List<Result> results, long elapsedNanos, int threads) {
+        int[] counts = new int[Status.values().length];
+        long[] latencies = new long[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            counts[results.get(i).getStatus().ordinal()]++;
+            latencies[i] = results.get(i).getElapsedNanos();
+        }
+        Arrays.sort(latencies);
+        double seconds = elapsedNanos / 1e9;
+        return String.format(Locale.ROOT,
+                "Safes: %d (solved %d, unsolvable %d, timeout %d, error %d) on %d threads%n" +
+                        "Elapsed time: %.3f seconds, %.1f safes/second%n" +
+                        "Latency p50: %.3f ms, p99: %.3f ms",
+                results.size(), counts[Status.SOLVED.ordinal()], counts[Status.UNSOLVABLE.ordinal()],
+                counts[Status.TIMEOUT.ordinal()], counts[Status.ERROR.ordinal()], threads,
+                seconds, results.size() / seconds,
+                percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6);
+    }
+
+    /**
+     * The nearest-rank percentile of sorted values
+     */
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,386 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A safe solving engine based on Knuth's Dancing Links. The safe is turned
+ * into a cover problem whose options are the cells a laser can go in, and
+ * whose items are:
+ *
+ *     - every cell that is not lit yet, which must be covered at least once
+ *       by an option whose row or column segment contains it,
+ *     - every numbered pillar, which must be covered by exactly as many
+ *       options as it still needs lasers,
+ *     - every row and column segment, which may be covered at most once,
+ *       since two lasers in one segment would see each other.
+ *
+ * Like Algorithm X, the search always branches on the item with the fewest
+ * options left, and removing and restoring options are constant time link
+ * updates. Since cells may be lit twice, covering a cell only takes it off
+ * the list of items still to cover instead of removing its other options.
+ * Every change is recorded on an undo trail and rolled back in reverse order.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class DancingLinksSolver implements SafeEngine {
+
+    /** the kinds of item */
+    private static final int CELL = 0;
+    private static final int PILLAR = 1;
+    private static final int SEGMENT = 2;
+
+    /** the kinds of undo trail entry, kept in the low bits of an entry */
+    private static final int HIDE = 0;
+    private static final int DEACTIVATE = 1;
+    private static final int NEED = 2;
+
+    /** Where to count the branches looked at. May be null */
+    private SolverStats stats;
+
+    //The links. Nodes 0 to items are the item headers, with 0 as the root of the
+    //list of items still to cover. Every other node belongs to an option.
+    private int[] left;
+    private int[] right;
+    private int[] up;
+    private int[] down;
+    private int[] item;
+    private int[] option;
+
+    //Per item: its kind, its number of live options, whether it is still to be
+    //covered, and for a numbered pillar how many more lasers it needs
+    private int[] kind;
+    private int[] length;
+    private boolean[] active;
+    private int[] need;
+
+    //Per option: the cell of its laser, and its nodes
+    private int[] optionCell;
+    private int[] optionFirst;
+    private int[] optionSize;
+
+    //The undo trail, and the options chosen so far
+    private int[] trail;
+    private int trailSize;
+    private int[] chosen;
+    private int chosenSize;
+
+    /**
+     * Sets where the branches looked at are counted
+     *
+     * @param stats the stats to count into, or null to stop counting
+     */
+    public void setStats(SolverStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public Optional<Configuration> solve(SafeConfig config) {
+        SafeState state = config.getState();
+        //Lasers that already see each other, or pillars that already cannot be satisfied
+        if (!state.isSafeValid()) {
+            return Optional.empty();
+        }
+        if (!build(state)) {
+            return Optional.empty();
+        }
+        if (!search()) {
+            return Optional.empty();
+        }
+        SafeState solved = new SafeState(state);
+        for (int i = 0; i < this.chosenSize; i++) {
+            int cell = this.optionCell[this.chosen[i]];
+            solved.place(cell / state.getCols(), cell % state.getCols());
+        }
+        return Optional.of(new SafeConfig(solved));
+    }
+
+    /**
+     * Builds the items and options of a safe and links them up.
+     *
+     * @param state the safe
+     * @return false if some numbered pillar already has too many lasers
+     */
+    private boolean build(SafeState state) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+        int[] itemOf = new int[rows * cols];
+        List<Integer> kinds = new ArrayList<>();
+        List<Integer> needs = new ArrayList<>();
+        kinds.add(-1);
+        needs.add(0);
+
+        //The cells to light and the numbered pillars, which are to be covered
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                itemOf[r * cols + c] = -1;
+                if (state.getDigit(r, c) >= 0) {
+                    int remaining = state.getDigit(r, c) - state.adjacentLasers(r, c);
+                    if (remaining < 0) {
+                        return false;
+                    }
+                    itemOf[r * cols + c] = kinds.size();
+                    kinds.add(PILLAR);
+                    needs.add(remaining);
+                } else if (!state.isPillar(r, c) && !state.isLit(r, c)) {
+                    itemOf[r * cols + c] = kinds.size();
+                    kinds.add(CELL);
+                    needs.add(0);
+                }
+            }
+        }
+        //The segments, which may be covered at most once
+        int firstSegment = kinds.size();
+        for (int seg = 0; seg < state.getSegmentCount(); seg++) {
+            kinds.add(SEGMENT);
+            needs.add(0);
+        }
+        int items = kinds.size() - 1;
+
+        //One option per cell a laser could still go in
+        List<int[]> options = new ArrayList<>();
+        List<Integer> cells = new ArrayList<>();
+        int nodes = items + 1;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (!state.isOpen(r, c)) {
+                    continue;
+                }
+                List<Integer> covers = new ArrayList<>();
+                int rowSeg = state.getRowSegment(r, c);
+                int colSeg = state.getColSegment(r, c);
+                for (int i = state.getSegmentStart(rowSeg); i <= state.getSegmentEnd(rowSeg); i++) {
+                    if (itemOf[r * cols + i] >= 0) {
+                        covers.add(itemOf[r * cols + i]);
+                    }
+                }
+                for (int i = state.getSegmentStart(colSeg); i <= state.getSegmentEnd(colSeg); i++) {
+                    //the laser's own cell was already covered by the row
+                    if (i != r && itemOf[i * cols + c] >= 0) {
+                        covers.add(itemOf[i * cols + c]);
+                    }
+                }
+                covers.add(firstSegment + rowSeg);
+                covers.add(firstSegment + colSeg);
+                if (r + 1 < rows && state.getDigit(r + 1, c) >= 0) { covers.add(itemOf[(r + 1) * cols + c]); }
+                if (r - 1 >= 0 && state.getDigit(r - 1, c) >= 0) { covers.add(itemOf[(r - 1) * cols + c]); }
+                if (c + 1 < cols && state.getDigit(r, c + 1) >= 0) { covers.add(itemOf[r * cols + c + 1]); }
+                if (c - 1 >= 0 && state.getDigit(r, c - 1) >= 0) { covers.add(itemOf[r * cols + c - 1]); }
+                int[] list = new int[covers.size()];
+                for (int i = 0; i < list.length; i++) {
+                    list[i] = covers.get(i);
+                }
+                options.add(list);
+                cells.add(r * cols + c);
+                nodes += list.length;
+            }
+        }
+
+        this.left = new int[items + 1];
+        this.right = new int[items + 1];
+        this.up = new int[nodes];
+        this.down = new int[nodes];
+        this.item = new int[nodes];
+        this.option = new int[nodes];
+        this.kind = new int[items + 1];
+        this.length = new int[items + 1];
+        this.active = new boolean[items + 1];
+        this.need = new int[items + 1];
+        this.optionCell = new int[options.size()];
+        this.optionFirst = new int[options.size()];
+        this.optionSize = new int[options.size()];
+        //Every option is hidden at most once per level, and each level deactivates or
+        //counts down each item at most once
+        this.trail = new int[2 * (options.size() + 2 * (items + 1)) + 16];
+        this.trailSize = 0;
+        this.chosen = new int[options.size() + 1];
+        this.chosenSize = 0;
+
+        //The item headers. Only the items to be covered are linked into the root's list
+        this.left[0] = 0;
+        this.right[0] = 0;
+        for (int i = 1; i <= items; i++) {
+            this.kind[i] = kinds.get(i);
+            this.need[i] = needs.get(i);
+            this.up[i] = i;
+            this.down[i] = i;
+            this.item[i] = i;
+            this.option[i] = -1;
+            if (this.kind[i] == CELL || (this.kind[i] == PILLAR && this.need[i] > 0)) {
+                this.left[i] = this.left[0];
+                this.right[i] = 0;
+                this.right[this.left[0]] = i;
+                this.left[0] = i;
+                this.active[i] = true;
+            } else {
+                this.left[i] = i;
+                this.right[i] = i;
+            }
+        }
+
+        //The option nodes, appended to the bottom of each of their items
+        int node = items + 1;
+        for (int o = 0; o < options.size(); o++) {
+            this.optionCell[o] = cells.get(o);
+            this.optionFirst[o] = node;
+            this.optionSize[o] = options.get(o).length;
+            for (int i : options.get(o)) {
+                this.item[node] = i;
+                this.option[node] = o;
+                this.up[node] = this.up[i];
+                this.down[node] = i;
+                this.down[this.up[i]] = node;
+                this.up[i] = node;
+                this.length[i]++;
+                node++;
+            }
+        }
+
+        //A numbered pillar that already has its lasers rules out every cell next to it
+        for (int i = 1; i <= items; i++) {
+            if (this.kind[i] == PILLAR && this.need[i] == 0) {
+                for (int x = this.down[i]; x != i; x = this.down[x]) {
+                    hide(this.option[x]);
+                }
+            }
+        }
+        this.trailSize = 0;
+        return true;
+    }
+
+    /**
+     * The recursive search.
+     *
+     * @return true if every item has been covered; the chosen options are the solution
+     */
+    private boolean search() {
+        if (this.stats != null) {
+            this.stats.nodeExpanded();
+        }
+        if (this.right[0] == 0) {
+            return true;
+        }
+        //Choose the item with the fewest options left
+        int best = -1;
+        int bestLength = Integer.MAX_VALUE;
+        for (int i = this.right[0]; i != 0; i = this.right[i]) {
+            //A pillar with fewer cells left than lasers needed can never be satisfied
+            if (this.length[i] < this.need[i]) {
+                return false;
+            }
+            if (this.length[i] < bestLength) {
+                best = i;
+                bestLength = this.length[i];
+            }
+        }
+        if (bestLength == 0) {
+            return false;
+        }
+
+        int levelMark = this.trailSize;
+        for (int x = this.down[best]; x != best; x = this.down[x]) {
+            int o = this.option[x];
+            int mark = this.trailSize;
+            this.chosen[this.chosenSize++] = o;
+            choose(o);
+            if (search()) {
+                return true;
+            }
+            undo(mark);
+            this.chosenSize--;
+            //Later branches of this item do not use this option, so none are searched twice
+            hide(o);
+            if (this.length[best] < this.need[best]) {
+                break;
+            }
+        }
+        undo(levelMark);
+        return false;
+    }
+
+    /**
+     * Puts a laser in the cell of an option, covering what it covers.
+     */
+    private void choose(int o) {
+        hide(o);
+        for (int x = this.optionFirst[o]; x < this.optionFirst[o] + this.optionSize[o]; x++) {
+            int i = this.item[x];
+            switch (this.kind[i]) {
+                case SEGMENT:
+                    //No other laser may go in the segment
+                    for (int y = this.down[i]; y != i; y = this.down[y]) {
+                        hide(this.option[y]);
+                    }
+                    break;
+                case PILLAR:
+                    this.need[i]--;
+                    this.trail[this.trailSize++] = (i << 2) | NEED;
+                    //The pillar is satisfied, no other laser may go next to it
+                    if (this.need[i] == 0) {
+                        for (int y = this.down[i]; y != i; y = this.down[y]) {
+                            hide(this.option[y]);
+                        }
+                        deactivate(i);
+                    }
+                    break;
+                default:
+                    if (this.active[i]) {
+                        deactivate(i);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Unlinks every node of an option from its item, so it can no longer be chosen
+     */
+    private void hide(int o) {
+        for (int x = this.optionFirst[o]; x < this.optionFirst[o] + this.optionSize[o]; x++) {
+            this.down[this.up[x]] = this.down[x];
+            this.up[this.down[x]] = this.up[x];
+            this.length[this.item[x]]--;
+        }
+        this.trail[this.trailSize++] = (o << 2) | HIDE;
+    }
+
+    /**
+     * Takes an item off the list of items still to cover
+     */
+    private void deactivate(int i) {
+        this.right[this.left[i]] = this.right[i];
+        this.left[this.right[i]] = this.left[i];
+        this.active[i] = false;
+        this.trail[this.trailSize++] = (i << 2) | DEACTIVATE;
+    }
+
+    /**
+     * Rolls the undo trail back to a mark, in reverse order
+     */
+    private void undo(int mark) {
+        while (this.trailSize > mark) {
+            int entry = this.trail[--this.trailSize];
+            int value = entry >>> 2;
+            switch (entry & 3) {
+                case HIDE:
+                    int first = this.optionFirst[value];
+                    for (int x = first + this.optionSize[value] - 1; x >= first; x--) {
+                        this.down[this.up[x]] = x;
+                        this.up[this.down[x]] = x;
+                        this.length[this.item[x]]++;
+                    }
+                    break;
+                case DEACTIVATE:
+                    this.right[this.left[value]] = value;
+                    this.left[this.right[value]] = value;
+                    this.active[value] = true;
+                    break;
+                default:
+                    this.need[value]++;
+                    break;
+            }
+        }
+    }
+}
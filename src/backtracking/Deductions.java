@@ -0,0 +1,382 @@
+package backtracking;
+
+import java.util.Optional;
+
+/**
+ * Logical deductions about a safe, the kind a person makes by looking at it.
+ * A deduction finds a spot that must take a laser in every solution that
+ * keeps the lasers already placed, without searching:
+ *
+ *     - PILLAR: a numbered pillar has exactly as many free spots next to it
+ *       as lasers it still needs, so every one of them takes a laser,
+ *     - SEGMENT: an unlit spot cannot be lit along one of its row or column,
+ *       so the other must hold the laser that lights it, and only one free
+ *       spot of that one is left,
+ *     - ONLY_LIGHT: an unlit spot has no free spot left in its row or column
+ *       but itself, so it must take the laser.
+ *
+ * When none of these applies, free spots are ruled out and the rules tried
+ * again. A spot is ruled out when it is next to a numbered pillar that already
+ * has its lasers, or when a laser there would leave a numbered pillar unable
+ * to get its number or a spot unable to be lit.
+ *
+ * The same rules reduce a safe before it is searched: presolve() places
+ * every forced laser and rules out every spot it can, over and over until
+ * nothing changes, so the search starts from the spots left undecided.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class Deductions {
+
+    /** The rules that can force a laser */
+    public enum Rule {
+        PILLAR("the pillar needs every free spot next to it"),
+        SEGMENT("it is the only free spot that can light an unlit spot"),
+        ONLY_LIGHT("an unlit spot can only be lit by a laser on itself"),
+        SEARCH("searching for a solution");
+
+        private final String description;
+
+        Rule(String description) {
+            this.description = description;
+        }
+
+        /**
+         * getter function for what the rule says
+         */
+        public String getDescription() { return this.description; }
+    }
+
+    /** A spot that must take a laser, and why */
+    public static class Forced {
+        private final int row;
+        private final int col;
+        private final Rule rule;
+        private final String reason;
+        private final int ruledOut;
+
+        Forced(int row, int col, Rule rule, String reason, int ruledOut) {
+            this.row = row;
+            this.col = col;
+            this.rule = rule;
+            this.reason = reason;
+            this.ruledOut = ruledOut;
+        }
+
+        /**
+         * getter function for the row of the laser
+         */
+        public int getRow() { return this.row; }
+
+        /**
+         * getter function for the column of the laser
+         */
+        public int getCol() { return this.col; }
+
+        /**
+         * getter function for the rule that forced the laser
+         */
+        public Rule getRule() { return this.rule; }
+
+        /**
+         * getter function for the reason in terms of the safe, naming the spots involved
+         */
+        public String getReason() { return this.reason; }
+
+        /**
+         * getter function for the number of spots ruled out before the rule applied
+         */
+        public int getRuledOut() { return this.ruledOut; }
+
+        @Override
+        public String toString() {
+            return "(" + this.row + ", " + this.col + ") by " + this.rule + ": " + this.reason
+                    + (this.ruledOut > 0 ? " (after ruling out " + this.ruledOut + " spots)" : "");
+        }
+    }
+
+    /**
+     * Finds a spot that must take a laser. The state given is not changed.
+     *
+     * @param state the safe, with the lasers placed so far
+     * @return the first forced laser found, or empty if there is none, or if the
+     *         state cannot lead to a solution
+     */
+    public static Optional<Forced> nextForced(SafeState state) {
+        if (!state.isSafeValid() || state.isSolved()) {
+            return Optional.empty();
+        }
+        SafeState work = new SafeState(state);
+        int ruledOut = 0;
+        while (true) {
+            Optional<Forced> forced = findForced(work, ruledOut);
+            if (forced.isPresent()) {
+                return forced;
+            }
+            int excluded = ruleOut(work);
+            if (excluded == 0 || !work.isSafeValid()) {
+                return Optional.empty();
+            }
+            ruledOut += excluded;
+        }
+    }
+
+    /** What presolving did to a safe */
+    public static class Reduction {
+        private final int placed;
+        private final int ruledOut;
+        private final boolean consistent;
+
+        Reduction(int placed, int ruledOut, boolean consistent) {
+            this.placed = placed;
+            this.ruledOut = ruledOut;
+            this.consistent = consistent;
+        }
+
+        /**
+         * getter function for the number of lasers placed
+         */
+        public int getPlaced() { return this.placed; }
+
+        /**
+         * getter function for the number of spots ruled out
+         */
+        public int getRuledOut() { return this.ruledOut; }
+
+        /**
+         * Can the safe still be solved? False means the rules showed it cannot.
+         */
+        public boolean isConsistent() { return this.consistent; }
+
+        @Override
+        public String toString() {
+            return "Presolve placed " + this.placed + " lasers and ruled out " + this.ruledOut + " spots"
+                    + (this.consistent ? "" : ", and found there is no solution");
+        }
+    }
+
+    /**
+     * Places every laser the rules force and rules out every spot they can,
+     * until neither finds anything more. The lasers placed are in every
+     * solution that keeps the lasers already there, and the spots ruled out are
+     * closed, so a search of the state afterwards finds the same solutions.
+     *
+     * @param state the safe, changed in place
+     * @return how much was decided
+     */
+    public static Reduction presolve(SafeState state) {
+        SolverEvents.Presolve event = SolverEvents.beginPresolve();
+        int placed = 0;
+        int ruledOut = 0;
+        while (state.isSafeValid() && !state.isSolved()) {
+            int forced = placeForced(state);
+            placed += forced;
+            if (!state.isSafeValid()) {
+                break;
+            }
+            int excluded = ruleOut(state);
+            ruledOut += excluded;
+            if (forced == 0 && excluded == 0) {
+                break;
+            }
+        }
+        Reduction reduction = new Reduction(placed, ruledOut, state.isSafeValid());
+        SolverEvents.endPresolve(event, reduction);
+        return reduction;
+    }
+
+    /**
+     * Applies the forcing rules in one pass over the safe, placing each laser
+     * as soon as it is found.
+     *
+     * @param state the safe, changed in place
+     * @return the number of lasers placed
+     */
+    static int placeForced(SafeState state) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+        int placed = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int digit = state.getDigit(r, c);
+                if (digit <= 0) {
+                    continue;
+                }
+                int[] free = openNeighbours(state, r, c);
+                if (free.length > 0 && free.length == digit - state.adjacentLasers(r, c)) {
+                    //no two spots around a pillar see each other, so none of them is lit by the others
+                    for (int spot : free) {
+                        state.place(spot / cols, spot % cols);
+                        placed++;
+                    }
+                }
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (state.isPillar(r, c) || state.isLit(r, c)) {
+                    continue;
+                }
+                int rowSeg = state.getRowSegment(r, c);
+                int colSeg = state.getColSegment(r, c);
+                int rowOpen = countOpen(state, rowSeg);
+                int colOpen = countOpen(state, colSeg);
+                int total = rowOpen + colOpen - (state.isOpen(r, c) ? 1 : 0);
+                if (total == 1) {
+                    int spot = state.isOpen(r, c) ? r * cols + c : firstOpen(state, rowOpen == 1 ? rowSeg : colSeg);
+                    state.place(spot / cols, spot % cols);
+                    placed++;
+                }
+            }
+        }
+        return placed;
+    }
+
+    /**
+     * Applies the forcing rules once, in row-major order.
+     *
+     * @param state    the safe
+     * @param ruledOut the spots ruled out so far, for the result
+     * @return the first forced laser, or empty if no rule applies
+     */
+    static Optional<Forced> findForced(SafeState state, int ruledOut) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int digit = state.getDigit(r, c);
+                if (digit <= 0) {
+                    continue;
+                }
+                int need = digit - state.adjacentLasers(r, c);
+                int[] free = openNeighbours(state, r, c);
+                if (need > 0 && free.length == need) {
+                    return Optional.of(new Forced(free[0] / cols, free[0] % cols, Rule.PILLAR,
+                            "the " + digit + " at (" + r + ", " + c + ") needs " + need + " more and has "
+                                    + need + " free spots", ruledOut));
+                }
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (state.isPillar(r, c) || state.isLit(r, c)) {
+                    continue;
+                }
+                int rowSeg = state.getRowSegment(r, c);
+                int colSeg = state.getColSegment(r, c);
+                int rowOpen = countOpen(state, rowSeg);
+                int colOpen = countOpen(state, colSeg);
+                //(r,c) itself is in both segments
+                int total = rowOpen + colOpen - (state.isOpen(r, c) ? 1 : 0);
+                if (total != 1) {
+                    continue;
+                }
+                if (state.isOpen(r, c)) {
+                    return Optional.of(new Forced(r, c, Rule.ONLY_LIGHT,
+                            "(" + r + ", " + c + ") has no other free spot in its row or column", ruledOut));
+                }
+                int seg = rowOpen == 1 ? rowSeg : colSeg;
+                int spot = firstOpen(state, seg);
+                String line = state.isRowSegment(seg) ? "row" : "column";
+                String other = state.isRowSegment(seg) ? "column" : "row";
+                return Optional.of(new Forced(spot / cols, spot % cols, Rule.SEGMENT,
+                        "(" + r + ", " + c + ") cannot be lit along its " + other + ", and ("
+                                + spot / cols + ", " + spot % cols + ") is the only free spot along its "
+                                + line, ruledOut));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Closes the free spots that cannot take a laser in any solution.
+     *
+     * @param state the safe, changed in place
+     * @return the number of spots closed
+     */
+    static int ruleOut(SafeState state) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+        int closed = 0;
+        //next to a numbered pillar that already has its lasers
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int digit = state.getDigit(r, c);
+                if (digit >= 0 && state.adjacentLasers(r, c) == digit) {
+                    for (int spot : openNeighbours(state, r, c)) {
+                        state.close(spot / cols, spot % cols);
+                        closed++;
+                    }
+                }
+            }
+        }
+        //a laser there would leave a pillar or a spot unsatisfiable
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (!state.isOpen(r, c)) {
+                    continue;
+                }
+                state.place(r, c);
+                boolean valid = state.isSafeValid();
+                state.remove(r, c);
+                if (!valid) {
+                    state.close(r, c);
+                    closed++;
+                }
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * The open spots next to (r,c), as row * cols + col
+     */
+    private static int[] openNeighbours(SafeState state, int r, int c) {
+        int cols = state.getCols();
+        int[] found = new int[4];
+        int size = 0;
+        if (r - 1 >= 0 && state.isOpen(r - 1, c)) { found[size++] = (r - 1) * cols + c; }
+        if (c - 1 >= 0 && state.isOpen(r, c - 1)) { found[size++] = r * cols + c - 1; }
+        if (c + 1 < cols && state.isOpen(r, c + 1)) { found[size++] = r * cols + c + 1; }
+        if (r + 1 < state.getRows() && state.isOpen(r + 1, c)) { found[size++] = (r + 1) * cols + c; }
+        int[] exact = new int[size];
+        System.arraycopy(found, 0, exact, 0, size);
+        return exact;
+    }
+
+    /**
+     * The number of open spots in a segment
+     */
+    private static int countOpen(SafeState state, int seg) {
+        int count = 0;
+        for (int i = state.getSegmentStart(seg); i <= state.getSegmentEnd(seg); i++) {
+            int spot = spotOf(state, seg, i);
+            if (state.isOpen(spot / state.getCols(), spot % state.getCols())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The first open spot of a segment, or -1 if there is none
+     */
+    private static int firstOpen(SafeState state, int seg) {
+        for (int i = state.getSegmentStart(seg); i <= state.getSegmentEnd(seg); i++) {
+            int spot = spotOf(state, seg, i);
+            if (state.isOpen(spot / state.getCols(), spot % state.getCols())) {
+                return spot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The spot at position i along a segment, as row * cols + col
+     */
+    private static int spotOf(SafeState state, int seg, int i) {
+        int line = state.getSegmentLine(seg);
+        return state.isRowSegment(seg) ? line * state.getCols() + i : i * state.getCols() + line;
+    }
+}
@@ -0,0 +1,168 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A parallel version of the backtracking algorithm built on a ForkJoinPool.
+ * The top of the search tree, down to the split depth, is handed out as one
+ * task per valid successor, so workers that run out of work steal the
+ * branches nobody has explored yet. Below the split depth each task runs the
+ * usual recursive search. As soon as one task reaches a goal every other task
+ * stops at its next configuration.
+ *
+ * Successors are searched by different threads, so configurations must not
+ * share anything that changes during a search.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class ParallelBacktracker {
+
+    /** The default depth of the tree that is split into tasks */
+    public static final int DEFAULT_SPLIT_DEPTH = 8;
+
+    /** the number of worker threads */
+    private final int workers;
+
+    /** how many levels of the tree are split into tasks */
+    private final int splitDepth;
+
+    /** Where to count the configurations looked at. May be null */
+    private SolverStats stats;
+
+    /**
+     * Initialize a new parallel backtracker.
+     *
+     * @param workers    the number of worker threads, at least 1
+     * @param splitDepth the number of levels of the tree to split into tasks
+     */
+    public ParallelBacktracker(int workers, int splitDepth) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1: " + workers);
+        }
+        if (splitDepth < 0) {
+            throw new IllegalArgumentException("splitDepth must not be negative: " + splitDepth);
+        }
+        this.workers = workers;
+        this.splitDepth = splitDepth;
+    }
+
+    /**
+     * Initialize a new parallel backtracker with one worker per processor
+     * and the default split depth.
+     */
+    public ParallelBacktracker() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * Sets where the configurations looked at are counted
+     *
+     * @param stats the stats to count into, or null to stop counting
+     */
+    public void setStats(SolverStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * getter function for the number of worker threads
+     */
+    public int getWorkers() { return this.workers; }
+
+    /**
+     * getter function for the split depth
+     */
+    public int getSplitDepth() { return this.splitDepth; }
+
+    /**
+     * Try find a solution, if one exists, for a given configuration.
+     *
+     * @param config A valid configuration
+     * @return A solution config, or empty if no solution
+     */
+    public Optional<Configuration> solve(Configuration config) {
+        AtomicReference<Configuration> goal = new AtomicReference<>();
+        ForkJoinPool pool = new ForkJoinPool(this.workers);
+        try {
+            pool.invoke(new SearchTask(config, 0, goal));
+        } finally {
+            pool.shutdownNow();
+        }
+        return Optional.ofNullable(goal.get());
+    }
+
+    /**
+     * The search of one subtree
+     */
+    private class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Configuration config;
+        private final int depth;
+        private final AtomicReference<Configuration> goal;
+
+        private SearchTask(Configuration config, int depth, AtomicReference<Configuration> goal) {
+            this.config = config;
+            this.depth = depth;
+            this.goal = goal;
+        }
+
+        @Override
+        protected void compute() {
+            //Above the split depth, every valid successor becomes a task that can be stolen
+            if (this.depth < splitDepth) {
+                if (this.goal.get() != null) {
+                    return;
+                }
+                if (stats != null) {
+                    stats.nodeExpanded(this.depth);
+                }
+                if (this.config.isGoal()) {
+                    this.goal.compareAndSet(null, this.config);
+                    return;
+                }
+                List<SearchTask> tasks = new ArrayList<>();
+                for (Configuration child : this.config.getSuccessors()) {
+                    if (child.isValid()) {
+                        tasks.add(new SearchTask(child, this.depth + 1, this.goal));
+                    }
+                }
+                invokeAll(tasks);
+            } else {
+                search(this.config, this.depth);
+            }
+        }
+
+        /**
+         * The sequential search below the split depth. It gives up as soon as
+         * any task has found a goal.
+         *
+         * @param config the configuration to search from
+         * @param depth  how many moves it is from the starting configuration
+         * @return true if the search is over, either found here or elsewhere
+         */
+        private boolean search(Configuration config, int depth) {
+            if (this.goal.get() != null) {
+                return true;
+            }
+            if (stats != null) {
+                stats.nodeExpanded(depth);
+            }
+            if (config.isGoal()) {
+                this.goal.compareAndSet(null, config);
+                return true;
+            }
+            for (Configuration child : config.getSuccessors()) {
+                if (child.isValid() && search(child, depth + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
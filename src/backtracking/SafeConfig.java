@@ -1,7 +1,7 @@
 package backtracking;
 
 import model.LasersModel;
-import model.Block;
+import model.SafeCorpus;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
@@ -12,21 +12,53 @@ import java.util.Collection;
  * used by the backtracker to generate successors, check for
  * validity, and eventually find the goal.
  *
- * This class is given to you here, but it will undoubtedly need to
- * communicate with the model.  You are free to move it into the model
- * package and/or incorporate it into another class.
+ * The safe itself is held as a SafeState of bitsets. It is only
+ * converted from a LasersModel when loaded, and back into one when
+ * asked for with getSafe().
+ *
+ * It can also be searched in place, where moves are applied to one
+ * SafeConfig and rolled back from an undo trail instead of copied.
+ *
+ * By default the spots are branched on in row-major order. With the MRV
+ * branching the spot branched on is a candidate of the most constrained
+ * part of the safe instead: the unlit spot or unmet numbered pillar with the
+ * fewest ways left to satisfy it, ties going to the one that touches the
+ * most unlit spots.
  *
  * @author Sean Strout @ RIT CS
  * @author Daniel Jones
  * @author Michael Johansen
  */
-public class SafeConfig implements Configuration {
+public class SafeConfig implements UndoableConfiguration {
+
+    /** How the spot to branch on is chosen */
+    public enum Branching {
+        /** the next spot in row-major order */
+        ROW_MAJOR,
+        /** a spot that can satisfy the most constrained unlit spot or numbered pillar */
+        MRV
+    }
+
+    /** flags of an undo trail entry */
+    private static final int PLACED = 1;
+    private static final int CLOSED = 2;
 
-    private LasersModel safe;
+    private SafeState safe;
     //Keeps track of the coordinates of the tile to be edited
     private int currentRow;
     private int currentCol;
 
+    //The undo trail for searching in place. Each entry is the scan position before a move,
+    //shifted left twice, with the low bits saying whether the move placed a laser or closed a spot
+    private int[] trail;
+    private int trailSize;
+
+    //Where to count pruned successors, shared by every copy. May be null
+    private SolverStats stats;
+
+    //How the spot to branch on is chosen, shared by every copy
+    private Branching branching = Branching.ROW_MAJOR;
+
     /**
      * A constructor that makes a SafeConfig from a safe file
      * @param filename file for safe information
@@ -34,7 +66,7 @@ public class SafeConfig implements Configuration {
      */
     public SafeConfig(String filename) throws FileNotFoundException {
         try {
-            this.safe = new LasersModel(filename);
+            this.safe = new SafeState(new LasersModel(filename));
         } catch (FileNotFoundException fnfe) {
             System.out.println(fnfe.getMessage());
             System.exit(-1);
@@ -49,9 +81,14 @@ public class SafeConfig implements Configuration {
      * @param other Another SafeFig
      */
     public SafeConfig(SafeConfig other){
-        this.safe = new LasersModel(other.safe);
+        this.safe = new SafeState(other.safe);
         this.currentRow = other.currentRow;
         this.currentCol = other.currentCol;
+        this.stats = other.stats;
+        this.branching = other.branching;
+        if(this.stats != null){
+            this.stats.configCopied();
+        }
     }
 
     /**
@@ -60,11 +97,44 @@ public class SafeConfig implements Configuration {
      * @param model A LaserModel to make as a safe
      */
     public SafeConfig(LasersModel model){
-        this.safe = new LasersModel(model);
+        this.safe = new SafeState(model);
+        this.currentRow = 0;
+        this.currentCol = -1;
+    }
+
+    /**
+     * A constructor that takes a safe straight out of a corpus into the
+     * solver's bitsets, without making a LasersModel of it first.
+     * @param corpus the corpus the safe is in
+     * @param i the number of the safe in the corpus, from 0
+     */
+    public SafeConfig(SafeCorpus corpus, int i){
+        this.safe = new SafeState(corpus.getGrid(i));
+        this.currentRow = 0;
+        this.currentCol = -1;
+    }
+
+    /**
+     * A constructor that wraps a SafeState, for engines that work on the
+     * bitsets directly. The state is not copied.
+     * @param state the state of the safe
+     */
+    SafeConfig(SafeState state){
+        this.safe = state;
         this.currentRow = 0;
         this.currentCol = -1;
     }
 
+    /**
+     * Places the lasers the safe forces and rules out the spots that cannot take
+     * one, before searching, so the search only branches on the spots left
+     * undecided. See Deductions.presolve.
+     * @return what was decided, including whether the safe turned out to have no solution
+     */
+    public Deductions.Reduction presolve(){
+        return Deductions.presolve(this.safe);
+    }
+
     /**
      * Gets an ArrayList of the next configurations. A configuration where a laser is
      * added to a tile, and a configuration where the tile is left empty. If the
@@ -76,57 +146,324 @@ public class SafeConfig implements Configuration {
         ArrayList<Configuration> successors = new ArrayList<>();
         //Make two children, deep copies of current configuration
         SafeConfig child1 = new SafeConfig(this);
-        SafeConfig child2 = new SafeConfig(this);
-        //Increments the tile location to be edited for the next generation
-        child1.currentCol += 1;
-        //The next spot is out of range in the columns
-        if(child1.currentCol >= child1.safe.getCols()) {
-            //Circulates to the next row
-            child1.currentCol = child1.currentCol % child1.safe.getCols();
-            child1.currentRow += 1;
-        }
-        //Attempts to add a laser to the current working spot
-        boolean added = child1.safe.add(child1.currentRow, child1.currentCol);
-        //If a laser could not be added there is a pillar or another laser in that spot.
-        //Moves along to the next valid spot to place a laser
-        while(!added){
-            child1.currentCol += 1;
-            //The next spot is out of range in the columns
-            if(child1.currentCol >= child1.safe.getCols()){
-                //Circulates to the next row
-                child1.currentCol = child1.currentCol % child1.safe.getCols();
-                child1.currentRow += 1;
-            }
+        //Moves along to the next spot a laser could be added, skipping pillars and lasers
+        int next = nextSpot();
+        //With MRV branching there is nothing left to satisfy, so this is a goal or a dead end
+        if(next < 0 && this.branching == Branching.MRV){
+            return successors;
+        }
+        //If there is no such spot, the last spots for the safe are not valid spots to add
+        //a laser and this configuration can be tested for validity
+        if(next < 0){
+            child1.currentRow = child1.safe.getRows();
+            child1.currentCol = 0;
+            generated(1);
+            successors.add(child1);
+            return successors;
+        }
+        child1.currentRow = next / this.safe.getCols();
+        child1.currentCol = next % this.safe.getCols();
+
+        //The second child leaves the spot empty, matching the first child's current row and column,
+        //and closes it since the search will not come back to it
+        SafeConfig child2 = new SafeConfig(child1);
+        child2.safe.close(child2.currentRow, child2.currentCol);
 
-            //If the rows are out of range, then that means the last spots for the
-            //safe are not valid spots to add a laser and this configuration can be
-            //tested for validity
-            if( child1.currentRow >= child1.safe.getRows() ){
+        //A laser on a lit spot would see the laser lighting it, and a spot ruled out by presolve() is closed
+        generated(2);
+        if(child1.safe.isOpen(child1.currentRow, child1.currentCol)) {
+            child1.safe.place(child1.currentRow, child1.currentCol);
+            if(child1.isSafeValid() && child1.checkValid()) {
                 successors.add(child1);
-                return successors;
             }
-            //Try to add in the next spot
-            added = child1.safe.add(child1.currentRow, child1.currentCol);
-        }
-        //The laser has been added, in the nearest valid spot. Match the second child's current
-        //row and column values to the first child's
-        child2.currentRow = child1.currentRow;
-        child2.currentCol = child1.currentCol;
-
-        //MJ - don't know if these if statements are necessary, I think it might help
-        if(child1.isSafeValid()
-                && child1.safe.checkLaserValidity(child1.currentRow,child1.currentCol)
-                && child1.isValid()) {
-            successors.add(child1);
+        }
+        else if(this.stats != null){
+            this.stats.litRejected();
         }
         if( child2.isSafeValid()
-                && child2.isValid()) {
+                && child2.checkValid()) {
             successors.add(child2);
         }
 
         return successors;
     }
 
+    /**
+     * Finds the spot to branch on next, by the branching in use.
+     * @return the spot as row * cols + col, or -1 if there is none left
+     */
+    private int nextSpot(){
+        return this.branching == Branching.MRV ? mostConstrainedSpot() : nextOpenSpot();
+    }
+
+    /**
+     * Finds the unlit spot or unmet numbered pillar with the fewest ways left to
+     * satisfy it, and returns the first open spot that could. A pillar needing n
+     * more lasers from k open neighbours has k - n + 1 ways, counting which
+     * neighbour is the first laser; an unlit spot has one per open spot that
+     * could light it. Ties go to the one with the most unlit spots around it.
+     * @return the spot as row * cols + col, or -1 if every spot is lit and every
+     *         numbered pillar has its lasers
+     */
+    private int mostConstrainedSpot(){
+        int rows = this.safe.getRows();
+        int cols = this.safe.getCols();
+        int best = -1;
+        int bestOptions = Integer.MAX_VALUE;
+        int bestDegree = -1;
+        for(int r = 0; r < rows; r++){
+            for(int c = 0; c < cols; c++){
+                int options;
+                int spot;
+                int digit = this.safe.getDigit(r, c);
+                if(digit > 0){
+                    int need = digit - this.safe.adjacentLasers(r, c);
+                    if(need <= 0){
+                        continue;
+                    }
+                    //The open neighbours above, left, right and below; the first one is branched on
+                    spot = -1;
+                    int open = 0;
+                    if(isOpenAt(r - 1, c)){
+                        open++;
+                        spot = (r - 1) * cols + c;
+                    }
+                    if(isOpenAt(r, c - 1)){
+                        open++;
+                        spot = spot < 0 ? r * cols + c - 1 : spot;
+                    }
+                    if(isOpenAt(r, c + 1)){
+                        open++;
+                        spot = spot < 0 ? r * cols + c + 1 : spot;
+                    }
+                    if(isOpenAt(r + 1, c)){
+                        open++;
+                        spot = spot < 0 ? (r + 1) * cols + c : spot;
+                    }
+                    options = open - need + 1;
+                }
+                else if(!this.safe.isPillar(r, c) && !this.safe.isLit(r, c)){
+                    int rowSeg = this.safe.getRowSegment(r, c);
+                    int colSeg = this.safe.getColSegment(r, c);
+                    options = this.safe.getSegmentOpen(rowSeg) + this.safe.getSegmentOpen(colSeg)
+                            - (this.safe.isOpen(r, c) ? 1 : 0);
+                    spot = -1;
+                    if(options > 0){
+                        spot = this.safe.isOpen(r, c) ? r * cols + c
+                                : firstOpen(this.safe.getSegmentOpen(rowSeg) > 0 ? rowSeg : colSeg);
+                    }
+                }
+                else {
+                    continue;
+                }
+                //Nothing can satisfy it, so branching anywhere is pointless; the state is already invalid
+                if(spot < 0){
+                    continue;
+                }
+                if(options > bestOptions){
+                    continue;
+                }
+                int degree = unlitAround(r, c);
+                if(options < bestOptions || degree > bestDegree){
+                    best = spot;
+                    bestOptions = options;
+                    bestDegree = degree;
+                    //A forced spot cannot be beaten
+                    if(options == 1){
+                        return best;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The number of unlit spots in the row and column segments of a spot, or
+     * next to a numbered pillar
+     */
+    private int unlitAround(int r, int c){
+        if(this.safe.isPillar(r, c)){
+            return isUnlitAt(r - 1, c) + isUnlitAt(r, c - 1) + isUnlitAt(r, c + 1) + isUnlitAt(r + 1, c);
+        }
+        return unlitIn(this.safe.getRowSegment(r, c)) + unlitIn(this.safe.getColSegment(r, c));
+    }
+
+    /**
+     * Is (r,c) on the safe and open for a laser?
+     */
+    private boolean isOpenAt(int r, int c){
+        return r >= 0 && r < this.safe.getRows() && c >= 0 && c < this.safe.getCols() && this.safe.isOpen(r, c);
+    }
+
+    /**
+     * 1 if (r,c) is on the safe and an unlit spot, otherwise 0
+     */
+    private int isUnlitAt(int r, int c){
+        return r >= 0 && r < this.safe.getRows() && c >= 0 && c < this.safe.getCols()
+                && !this.safe.isPillar(r, c) && !this.safe.isLit(r, c) ? 1 : 0;
+    }
+
+    /**
+     * The number of unlit spots in a segment
+     */
+    private int unlitIn(int seg){
+        int cols = this.safe.getCols();
+        int count = 0;
+        for(int i = this.safe.getSegmentStart(seg); i <= this.safe.getSegmentEnd(seg); i++){
+            int spot = spotOf(seg, i);
+            if(!this.safe.isLit(spot / cols, spot % cols)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The first open spot of a segment, or -1 if there is none
+     */
+    private int firstOpen(int seg){
+        int cols = this.safe.getCols();
+        for(int i = this.safe.getSegmentStart(seg); i <= this.safe.getSegmentEnd(seg); i++){
+            int spot = spotOf(seg, i);
+            if(this.safe.isOpen(spot / cols, spot % cols)){
+                return spot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The spot at position i along a segment, as row * cols + col
+     */
+    private int spotOf(int seg, int i){
+        int line = this.safe.getSegmentLine(seg);
+        return this.safe.isRowSegment(seg) ? line * this.safe.getCols() + i : i * this.safe.getCols() + line;
+    }
+
+    /**
+     * Finds the next spot after the current location, in row-major order, that a laser
+     * could be added to. Pillars and spots that already have a laser are skipped.
+     * @return the spot as row * cols + col, or -1 if the end of the safe was reached
+     */
+    private int nextOpenSpot(){
+        int cols = this.safe.getCols();
+        int rows = this.safe.getRows();
+        for(int spot = this.currentRow * cols + this.currentCol + 1; spot < rows * cols; spot++){
+            if(!this.safe.isPillar(spot / cols, spot % cols) && !this.safe.isLaser(spot / cols, spot % cols)){
+                return spot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The moves from this configuration match getSuccessors: adding a laser to the next
+     * open spot, or leaving it empty. At the end of the safe the only move is to finish.
+     * With MRV branching there is no move once nothing is left to satisfy.
+     * @return 2 moves, or 1 once no open spot remains
+     */
+    @Override
+    public int getMoveCount() {
+        if(nextSpot() < 0){
+            return this.branching == Branching.MRV ? 0 : 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Moves to the next open spot, adding a laser there for move 0 and leaving it
+     * empty for move 1, and pushes the previous location onto the undo trail.
+     * @param move 0 to add a laser, 1 to leave the spot empty
+     * @return true if the configuration is valid after the move
+     */
+    @Override
+    public boolean makeMove(int move) {
+        if(this.trail == null){
+            //One entry per spot of the safe, plus the final move off the end
+            this.trail = new int[this.safe.getRows() * this.safe.getCols() + 1];
+        }
+        int cols = this.safe.getCols();
+        int previous = this.currentRow * cols + this.currentCol;
+        int next = nextSpot();
+        generated(1);
+        if(next < 0){
+            this.trail[this.trailSize++] = (previous + 1) << 2;
+            this.currentRow = this.safe.getRows();
+            this.currentCol = 0;
+            return checkValid();
+        }
+        this.currentRow = next / cols;
+        this.currentCol = next % cols;
+        //A laser on a lit or ruled out spot is not placed at all
+        if(move == 0){
+            if(!this.safe.isOpen(this.currentRow, this.currentCol)){
+                this.trail[this.trailSize++] = (previous + 1) << 2;
+                if(this.stats != null){
+                    this.stats.litRejected();
+                }
+                return false;
+            }
+            this.safe.place(this.currentRow, this.currentCol);
+            this.trail[this.trailSize++] = ((previous + 1) << 2) | PLACED;
+        }
+        //The spot is left empty and closed, since the search will not come back to it
+        else {
+            this.safe.close(this.currentRow, this.currentCol);
+            this.trail[this.trailSize++] = ((previous + 1) << 2) | CLOSED;
+        }
+        return isSafeValid() && checkValid();
+    }
+
+    /**
+     * Counts successors made, if stats are kept
+     */
+    private void generated(int count){
+        if(this.stats != null){
+            for(int i = 0; i < count; i++){
+                this.stats.successorGenerated();
+            }
+        }
+    }
+
+    /**
+     * isValid for a successor just made, counting it if it fails
+     */
+    private boolean checkValid(){
+        if(isValid()){
+            return true;
+        }
+        if(this.stats != null){
+            this.stats.validRejected();
+        }
+        return false;
+    }
+
+    /**
+     * Pops the last move off the undo trail, removing its laser and
+     * restoring the location it was made from.
+     */
+    @Override
+    public void undoMove() {
+        int entry = this.trail[--this.trailSize];
+        if((entry & PLACED) != 0){
+            this.safe.remove(this.currentRow, this.currentCol);
+        }
+        else if((entry & CLOSED) != 0){
+            this.safe.reopen(this.currentRow, this.currentCol);
+        }
+        int previous = (entry >> 2) - 1;
+        //The starting location is just before the first spot, (0,-1)
+        if(previous < 0){
+            this.currentRow = 0;
+            this.currentCol = -1;
+        }
+        else {
+            this.currentRow = previous / this.safe.getCols();
+            this.currentCol = previous % this.safe.getCols();
+        }
+    }
+
     /**
      * Depending on the point in the safe that the Safe has been edited up to,
      * either checks if the whole safe is valid if everything has been checked,
@@ -138,34 +475,35 @@ public class SafeConfig implements Configuration {
         //If the currentRow counter is equal to or exceeding the number of rows
         //in the safe, then the end of the safe has been reached
         if(this.currentRow >= this.safe.getRows()){
-            return this.safe.verify();
+            return isSolved();
         }
-        //Makes a copy of the tile that's in question
-        Block tileCopy = this.safe.getblock(this.currentRow, this.currentCol);
         //If the tile that is in question is a laser then it checks that the laser is valid
-        if(tileCopy.getCharToDisplay() == LasersModel.LASER){
-            return this.safe.checkLaserValidity(this.currentRow, this.currentCol);
+        if(this.currentCol >= 0 && this.safe.isLaser(this.currentRow, this.currentCol)){
+            return !this.safe.hasConflict(this.currentRow, this.currentCol);
         }
         return true;
     }
 
-
+    /**
+     * Checks that no lasers in the safe see each other, every numbered pillar can still
+     * get exactly its number of lasers, and every spot that is not lit yet still has
+     * somewhere left in its row or column that a laser could light it from.
+     * Successors that fail are counted in the stats, by reason.
+     * @return true if the lasers placed so far can still lead to a solution
+     */
     public boolean isSafeValid(){
-        for(int r=0;r<safe.getRows();r++){
-            for(int c=0;c<safe.getCols();c++){
-                if(safe.getblock(r,c).getCharToDisplay()==LasersModel.LASER){
-                    if(!this.safe.checkLaserValidity(r,c)){
-                        return false;
-                    }
-                }
-                else if(Character.isDigit(safe.getblock(r,c).getCharToDisplay())){
-                    if(!this.safe.checkPillarValidity(r,c,Character.getNumericValue(safe.getblock(r,c).getCharToDisplay()))){
-                        return  false;
-                    }
-                }
+        if(this.safe.isSafeValid()){
+            return true;
+        }
+        if(this.stats != null){
+            if(this.safe.hasStrandedCell()){
+                this.stats.coveragePruned();
+            }
+            else if(this.safe.hasViolatedPillar()){
+                this.stats.pillarPruned();
             }
         }
-        return true;
+        return false;
     }
 
     /**
@@ -174,22 +512,64 @@ public class SafeConfig implements Configuration {
      */
     @Override
     public boolean isGoal() {
-        //When the currentRow counter is greater than or equal to the number of rows in the safe
-        //the end of the safe has been reached, and is goal if the entire safe is valid.
-        if(this.safe.verify()) {
-            return true;
+        //The goal is reached as soon as the entire safe is valid
+        return isSolved();
+    }
+
+    /**
+     * Checks the safe is solved, timing the check if stats are kept
+     */
+    private boolean isSolved(){
+        if(this.stats == null){
+            return this.safe.isSolved();
         }
-        return false;
+        long start = System.nanoTime();
+        boolean solved = this.safe.isSolved();
+        this.stats.verifyTime(System.nanoTime() - start);
+        return solved;
     }
 
     /**
-     * Getter function for getting the LaserModel representation of the safe
+     * Getter function for getting the LaserModel representation of the safe.
+     * The model is built from the bitsets, so each call returns a new model.
      * @return the LaserModel
      */
     public LasersModel getSafe(){
+        return this.safe.toModel();
+    }
+
+    /**
+     * Getter function for the bitset representation of the safe
+     * @return the SafeState
+     */
+    public SafeState getState(){
         return this.safe;
     }
 
+    /**
+     * Sets where pruned successors are counted. Every configuration copied
+     * from this one afterwards counts into the same stats.
+     * @param stats the stats to count into, or null to stop counting
+     */
+    public void setStats(SolverStats stats){
+        this.stats = stats;
+    }
+
+    /**
+     * Sets how the spot to branch on is chosen. Every configuration copied from
+     * this one afterwards branches the same way. Should be set before searching.
+     * @param branching the branching to use
+     */
+    public void setBranching(Branching branching){
+        this.branching = branching;
+    }
+
+    /**
+     * Getter function for how the spot to branch on is chosen
+     * @return the branching
+     */
+    public Branching getBranching(){ return this.branching; }
+
     /**
      * Getter function for the current row location
      * @return the current row location
@@ -201,4 +581,9 @@ public class SafeConfig implements Configuration {
      * @return the current col location
      */
     public int getCurrentCol(){ return this.currentCol; }
+
+    @Override
+    public String toString() {
+        return this.safe.toModel().to_string();
+    }
 }
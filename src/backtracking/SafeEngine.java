@@ -0,0 +1,23 @@
+package backtracking;
+
+import java.util.Optional;
+
+/**
+ * A solving engine specific to safes, as an alternative to running the
+ * general Backtracker over SafeConfigs. Engines hand back their solution
+ * as a SafeConfig, so whoever asked for it can treat it like any solution
+ * found by the Backtracker.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public interface SafeEngine {
+    /**
+     * Try to find a solution, if one exists, for the safe of a configuration.
+     * Lasers already in the configuration are kept.
+     *
+     * @param config the configuration to solve; it is not changed
+     * @return a goal SafeConfig, or empty if there is no solution
+     */
+    public Optional<Configuration> solve(SafeConfig config);
+}
@@ -1,31 +1,214 @@
 package backtracking;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Optional;
 
 /**
  * This is the main class for a safe solver.  It runs the backtracking
  * algorithm and displays the solution, if one exists.
  *
+ * Options may follow the debug flag:
+ *     -inplace   search one configuration in place instead of copying it per successor
+ *     -iterative   search in place without recursion, for safes too big for the thread's stack
+ *     -parallel N  search with N worker threads
+ *     -split D     split the top D levels of the tree into parallel tasks
+ *     -stats       print the search statistics after solving
+ *     -engine E    solve with engine E: backtrack (the default), dlx or sat
+ *     -nopresolve  search from the safe as loaded, without placing the forced lasers first
+ *     -branch B    branch on spots in order B: rowmajor (the default), or mrv for the most constrained first
+ *     -count       count every solution instead of showing one, with the -parallel workers
+ *     -unique      like -count, but stop at 2 to tell whether the solution is unique
+ *
+ * The dlx and sat engines do their own search, so -inplace, -iterative,
+ * -parallel, -split, -branch, -count and -unique are refused with them.
+ * N must be at least 1 and D at least 0; an option missing its value, or
+ * given a bad one, prints the usage instead of solving.
+ *
+ * With -batch in place of the safe file, every safe in a directory or glob is
+ * solved by a BatchSolver instead.
+ *
  * @author Sean Strout @ RIT CS
  */
 public class SafeSolver {
-    public static void main(String[] args) throws FileNotFoundException {
-        if (args.length != 2) {
-            System.out.println("Usage: java SafeSolver safe.in debug");
+    private static final String USAGE =
+            "Usage: java SafeSolver safe.in debug [-inplace] [-iterative] [-parallel N] [-split D] [-stats] [-engine backtrack|dlx|sat] [-nopresolve] [-branch rowmajor|mrv] [-count|-unique]";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 1 && args[0].equals("-batch")) {
+            BatchSolver.main(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length < 2) {
+            System.out.println(USAGE);
+            System.out.println(BatchSolver.USAGE);
         } else {
+            // read the options after the debug flag
+            boolean inPlace = false;
+            boolean iterative = false;
+            boolean showStats = false;
+            boolean presolve = true;
+            SafeConfig.Branching branching = SafeConfig.Branching.ROW_MAJOR;
+            //the most solutions to count, 0 for all of them, or -1 to solve instead
+            long countCap = -1;
+            String engine = "backtrack";
+            int workers = 0;
+            int splitDepth = ParallelBacktracker.DEFAULT_SPLIT_DEPTH;
+            //the last option given that only the backtracking engine uses, if any
+            String backtrackOnly = null;
+            for (int i = 2; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-inplace":
+                        inPlace = true;
+                        backtrackOnly = args[i];
+                        break;
+                    case "-iterative":
+                        iterative = true;
+                        backtrackOnly = args[i];
+                        break;
+                    case "-parallel":
+                        backtrackOnly = args[i];
+                        workers = (int) optionNumber(args, i++, 1, Integer.MAX_VALUE, USAGE);
+                        if (workers < 0) {
+                            return;
+                        }
+                        break;
+                    case "-stats":
+                        showStats = true;
+                        break;
+                    case "-engine":
+                        engine = optionValue(args, i++, USAGE);
+                        if (engine == null) {
+                            return;
+                        }
+                        break;
+                    case "-nopresolve":
+                        presolve = false;
+                        break;
+                    case "-branch":
+                        backtrackOnly = args[i];
+                        String order = optionValue(args, i++, USAGE);
+                        if (order == null) {
+                            return;
+                        } else if (order.equals("mrv")) {
+                            branching = SafeConfig.Branching.MRV;
+                        } else if (!order.equals("rowmajor")) {
+                            System.out.println("Unknown branching: " + order);
+                            System.out.println(USAGE);
+                            return;
+                        }
+                        break;
+                    case "-count":
+                        countCap = 0;
+                        backtrackOnly = args[i];
+                        break;
+                    case "-unique":
+                        countCap = 2;
+                        backtrackOnly = args[i];
+                        break;
+                    case "-split":
+                        backtrackOnly = args[i];
+                        splitDepth = (int) optionNumber(args, i++, 0, Integer.MAX_VALUE, USAGE);
+                        if (splitDepth < 0) {
+                            return;
+                        }
+                        break;
+                    default:
+                        System.out.println("Unknown option: " + args[i]);
+                        System.out.println(USAGE);
+                        return;
+                }
+            }
+
+            // the other engines search their own way, without the backtracker's options
+            if (!engine.equals("backtrack") && !engine.equals("dlx") && !engine.equals("sat")) {
+                System.out.println("Unknown engine: " + engine);
+                System.out.println(USAGE);
+                return;
+            }
+            if (!engine.equals("backtrack") && backtrackOnly != null) {
+                System.out.println("The " + backtrackOnly + " option only works with -engine backtrack");
+                System.out.println(USAGE);
+                return;
+            }
+
             // construct the initial configuration from the file
-            Configuration init = new SafeConfig(args[0]);
+            SafeConfig init = new SafeConfig(args[0]);
+            init.setBranching(branching);
 
             // create the backtracker with the debug flag
             boolean debug = args[1].equals("true");
             Backtracker bt = new Backtracker(debug);
 
+            // count the search statistics if asked for
+            SolverStats stats = null;
+            if (showStats) {
+                stats = new SolverStats();
+                init.setStats(stats);
+                bt.setStats(stats);
+            }
+
+            // load the Flight Recorder events first, if a recording was asked for
+            SolverEvents.prepare();
+
             // start the clock
             double start = System.currentTimeMillis();
 
-            // attempt to solve the puzzle
-            Optional<Configuration> sol = bt.solve(init);
+            // place the forced lasers and rule out spots before searching
+            Deductions.Reduction reduction = null;
+            if (presolve) {
+                reduction = init.presolve();
+                System.out.println(reduction);
+            }
+
+            // count the solutions instead of finding one, if asked for
+            if (countCap >= 0) {
+                if (stats == null) {
+                    stats = new SolverStats();
+                    init.setStats(stats);
+                }
+                SolutionCounter counter = workers > 0
+                        ? new SolutionCounter(workers, splitDepth, SolutionCounter.DEFAULT_TABLE_SIZE)
+                        : new SolutionCounter();
+                counter.setStats(stats);
+                long count = reduction != null && !reduction.isConsistent() ? 0 : counter.count(init, countCap);
+                System.out.println("Elapsed time: " +
+                        (System.currentTimeMillis() - start)/1000.0 + " seconds.");
+                if (countCap == 2) {
+                    System.out.println(count == 1 ? "The solution is unique." :
+                            count == 0 ? "No solution!" : "The solution is not unique.");
+                }
+                System.out.println("Solutions: " + (countCap > 0 && count == countCap ? "at least " : "") + count);
+                System.out.println("Nodes expanded: " + stats.getNodes());
+                return;
+            }
+
+            // attempt to solve the puzzle, recorded for the Flight Recorder
+            SolverEvents.Search event = SolverEvents.beginSearch(workers > 0 && engine.equals("backtrack")
+                    ? "parallel" : engine);
+            Optional<Configuration> sol;
+            if (reduction != null && !reduction.isConsistent()) {
+                sol = Optional.empty();
+            } else if (engine.equals("dlx")) {
+                DancingLinksSolver dlx = new DancingLinksSolver();
+                dlx.setStats(stats);
+                sol = dlx.solve(init);
+            } else if (engine.equals("sat")) {
+                SatEngine sat = new SatEngine();
+                sat.setStats(stats);
+                sol = sat.solve(init);
+            } else if (workers > 0) {
+                ParallelBacktracker pbt = new ParallelBacktracker(workers, splitDepth);
+                pbt.setStats(stats);
+                System.out.println("Searching with " + pbt.getWorkers() + " workers, split depth "
+                        + pbt.getSplitDepth());
+                sol = pbt.solve(init);
+            } else if (iterative) {
+                sol = bt.solveIterative(init);
+            } else if (inPlace) {
+                sol = bt.solveInPlace(init);
+            } else {
+                sol = bt.solve(init);
+            }
+            SolverEvents.endSearch(event, stats, sol.isPresent(), false);
 
             // compute the elapsed time
             System.out.println("Elapsed time: " +
@@ -36,6 +219,56 @@ public class SafeSolver {
                 System.out.println("Solution:\n" + sol.get());
             } else {
                 System.out.println("No solution!");
-            }        }
+            }
+            if (stats != null) {
+                System.out.println(stats);
+            }
+        }
+    }
+
+    /**
+     * The value given after an option. If there is none, says so and prints the usage.
+     *
+     * @param args  the command line arguments
+     * @param i     where the option is in them
+     * @param usage the usage to print
+     * @return the value, or null if it is missing
+     */
+    static String optionValue(String[] args, int i, String usage) {
+        if (i + 1 < args.length) {
+            return args[i + 1];
+        }
+        System.out.println("Missing value for " + args[i]);
+        System.out.println(usage);
+        return null;
+    }
+
+    /**
+     * The whole number given after an option. If it is missing, not a whole
+     * number, or out of range, says so and prints the usage.
+     *
+     * @param args  the command line arguments
+     * @param i     where the option is in them
+     * @param min   the smallest value allowed, at least 0
+     * @param max   the largest value allowed
+     * @param usage the usage to print
+     * @return the number, or -1 if it was not given properly
+     */
+    static long optionNumber(String[] args, int i, long min, long max, String usage) {
+        String value = optionValue(args, i, usage);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long number = Long.parseLong(value);
+            if (number >= min && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException nfe) {
+            //reported below, like a number out of range
+        }
+        System.out.println("Bad value for " + args[i] + ": " + value);
+        System.out.println(usage);
+        return -1;
     }
 }
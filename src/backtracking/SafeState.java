@@ -0,0 +1,788 @@
+package backtracking;
+
+import model.LasersModel;
+
+/**
+ * The solver side representation of a safe. Instead of a grid of Block
+ * objects, every piece of the safe is stored as packed bitsets so that
+ * placing a laser, testing for a conflict and testing for coverage are
+ * a handful of word wide bit operations.
+ *
+ * Lasers and beams are kept twice, once row-major (one run of words per
+ * row) and once column-major (one run of words per column), so both the
+ * row segment and the column segment of a cell are contiguous bit ranges.
+ * A state only ever holds lasers that do not see each other, which means
+ * every segment holds at most one laser and a beam can be cleared again
+ * by simply clearing the segment it lit.
+ *
+ * Every numbered pillar also keeps a live count of the lasers next to it
+ * and of the cells next to it that are still open for a laser. A cell is
+ * open while it is not a pillar, not a laser, not lit, and has not been
+ * closed by the search. These counts are updated on every change, so a
+ * pillar that is over its number or can no longer reach it is known the
+ * moment the change that caused it is made.
+ *
+ * In the same way every row and column segment counts its open cells. A
+ * cell that is not lit while both of its segments have no open cells left
+ * is stranded: no laser can ever light it, so the state is a dead end.
+ *
+ * A SafeState is converted from a LasersModel, or straight from the tiles of
+ * a safe such as those kept in a SafeCorpus, when a safe is loaded, and back
+ * into a LasersModel when a solution has to be shown, nowhere else.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SafeState {
+
+    /** The parts of a safe that never change during a search, shared by all copies */
+    private static class Layout {
+        private final int rows;
+        private final int cols;
+        //number of words used for a single row, and for a single column
+        private final int rowWords;
+        private final int colWords;
+        //row-major bitsets of all pillars, and of only the numbered pillars
+        private final long[] pillars;
+        private final long[] numbered;
+        //the required number of lasers of a numbered pillar, -1 for every other cell
+        private final byte[] digits;
+        //the first and last column of the row segment of a cell, and
+        //the first and last row of the column segment of a cell
+        private final int[] rowSegStart;
+        private final int[] rowSegEnd;
+        private final int[] colSegStart;
+        private final int[] colSegEnd;
+        //the id of the row segment and the column segment of a cell
+        private final int[] rowSegId;
+        private final int[] colSegId;
+        //per segment id, whether it is a row segment, its row or column, and its extents
+        private final boolean[] segIsRow;
+        private final int[] segLine;
+        private final int[] segStart;
+        private final int[] segEnd;
+        private final int segCount;
+        //the index of a numbered pillar in the pillar counts, -1 for every other cell
+        private final int[] pillarIndex;
+        private final int numberedCount;
+
+        private Layout(char[][] tiles) {
+            this.rows = tiles.length;
+            this.cols = this.rows == 0 ? 0 : tiles[0].length;
+            this.rowWords = (this.cols + 63) >>> 6;
+            this.colWords = (this.rows + 63) >>> 6;
+            this.pillars = new long[this.rows * this.rowWords];
+            this.numbered = new long[this.rows * this.rowWords];
+            this.digits = new byte[this.rows * this.cols];
+            this.rowSegStart = new int[this.rows * this.cols];
+            this.rowSegEnd = new int[this.rows * this.cols];
+            this.colSegStart = new int[this.rows * this.cols];
+            this.colSegEnd = new int[this.rows * this.cols];
+            this.pillarIndex = new int[this.rows * this.cols];
+            this.rowSegId = new int[this.rows * this.cols];
+            this.colSegId = new int[this.rows * this.cols];
+            //there can be no more segments than twice the number of cells
+            int maxSegs = 2 * this.rows * this.cols;
+            this.segIsRow = new boolean[maxSegs];
+            this.segLine = new int[maxSegs];
+            this.segStart = new int[maxSegs];
+            this.segEnd = new int[maxSegs];
+
+            int numberedIndex = 0;
+            for (int r = 0; r < this.rows; r++) {
+                for (int c = 0; c < this.cols; c++) {
+                    char blockChar = tiles[r][c];
+                    this.digits[r * this.cols + c] = -1;
+                    this.pillarIndex[r * this.cols + c] = -1;
+                    if (blockChar == LasersModel.PILLAR || Character.isDigit(blockChar)) {
+                        setBit(this.pillars, r * this.rowWords, c);
+                        if (Character.isDigit(blockChar)) {
+                            setBit(this.numbered, r * this.rowWords, c);
+                            this.digits[r * this.cols + c] = (byte) Character.getNumericValue(blockChar);
+                            this.pillarIndex[r * this.cols + c] = numberedIndex++;
+                        }
+                    }
+                }
+            }
+
+            this.numberedCount = numberedIndex;
+
+            //Walk every row and column once, handing each run of non-pillar cells its extents
+            int segs = 0;
+            for (int r = 0; r < this.rows; r++) {
+                int start = 0;
+                for (int c = 0; c <= this.cols; c++) {
+                    if (c == this.cols || isPillar(r, c)) {
+                        if (start < c) {
+                            this.segIsRow[segs] = true;
+                            this.segLine[segs] = r;
+                            this.segStart[segs] = start;
+                            this.segEnd[segs] = c - 1;
+                            for (int i = start; i < c; i++) {
+                                this.rowSegStart[r * this.cols + i] = start;
+                                this.rowSegEnd[r * this.cols + i] = c - 1;
+                                this.rowSegId[r * this.cols + i] = segs;
+                            }
+                            segs++;
+                        }
+                        start = c + 1;
+                    }
+                }
+            }
+            for (int c = 0; c < this.cols; c++) {
+                int start = 0;
+                for (int r = 0; r <= this.rows; r++) {
+                    if (r == this.rows || isPillar(r, c)) {
+                        if (start < r) {
+                            this.segIsRow[segs] = false;
+                            this.segLine[segs] = c;
+                            this.segStart[segs] = start;
+                            this.segEnd[segs] = r - 1;
+                            for (int i = start; i < r; i++) {
+                                this.colSegStart[i * this.cols + c] = start;
+                                this.colSegEnd[i * this.cols + c] = r - 1;
+                                this.colSegId[i * this.cols + c] = segs;
+                            }
+                            segs++;
+                        }
+                        start = r + 1;
+                    }
+                }
+            }
+            this.segCount = segs;
+        }
+
+        /**
+         * The cell index of the i-th cell of a segment
+         */
+        private int segCell(int seg, int i) {
+            return this.segIsRow[seg] ? this.segLine[seg] * this.cols + i : i * this.cols + this.segLine[seg];
+        }
+
+        private boolean isPillar(int r, int c) {
+            return testBit(this.pillars, r * this.rowWords, c);
+        }
+    }
+
+    private final Layout layout;
+
+    /** lasers, row-major and column-major */
+    private final long[] lasersByRow;
+    private final long[] lasersByCol;
+
+    /** cells lit by a laser in their row segment (row-major), and in their column segment (column-major) */
+    private final long[] rowBeams;
+    private final long[] colBeams;
+
+    /** number of lasers that were loaded from a model while already seeing another laser */
+    private int conflicts;
+
+    /** number of reasons a cell cannot take a laser: being a laser, each beam over it, and being closed */
+    private final byte[] closed;
+
+    /** per numbered pillar, the lasers next to it and the open cells next to it */
+    private final byte[] pillarLasers;
+    private final byte[] pillarOpen;
+
+    /** numbered pillars that are over their number or can no longer reach it */
+    private int violations;
+
+    /** numbered pillars with fewer lasers than their number */
+    private int unmet;
+
+    /** per segment id, the number of open cells in the segment */
+    private final int[] segOpen;
+
+    /** per cell, whether it is stranded, and how many cells are */
+    private final boolean[] stranded;
+    private int strandedCells;
+
+    /** non-pillar cells that are not lit */
+    private int unlit;
+
+    /**
+     * Builds the bitsets from a LasersModel. Any lasers already in the
+     * model are placed as well.
+     * @param model the safe to convert
+     */
+    public SafeState(LasersModel model) {
+        this(tilesOf(model));
+    }
+
+    /**
+     * Builds the bitsets from the tiles of a safe, without going through a
+     * LasersModel. Any lasers among the tiles are placed as well, and beams
+     * are taken for empty tiles.
+     * @param tiles the tiles of the safe, indexed by row then column
+     */
+    public SafeState(char[][] tiles) {
+        this.layout = new Layout(tiles);
+        this.lasersByRow = new long[this.layout.rows * this.layout.rowWords];
+        this.lasersByCol = new long[this.layout.cols * this.layout.colWords];
+        this.rowBeams = new long[this.layout.rows * this.layout.rowWords];
+        this.colBeams = new long[this.layout.cols * this.layout.colWords];
+        this.conflicts = 0;
+        this.closed = new byte[this.layout.rows * this.layout.cols];
+        this.pillarLasers = new byte[this.layout.numberedCount];
+        this.pillarOpen = new byte[this.layout.numberedCount];
+        this.violations = 0;
+        this.unmet = 0;
+        Layout l = this.layout;
+        //Every non-pillar cell starts out open and unlit
+        this.segOpen = new int[l.segCount];
+        for (int seg = 0; seg < l.segCount; seg++) {
+            this.segOpen[seg] = l.segEnd[seg] - l.segStart[seg] + 1;
+            if (l.segIsRow[seg]) {
+                this.unlit += this.segOpen[seg];
+            }
+        }
+        this.stranded = new boolean[l.rows * l.cols];
+        this.strandedCells = 0;
+        //Every non-pillar neighbour starts out open
+        for (int r = 0; r < l.rows; r++) {
+            for (int w = 0; w < l.rowWords; w++) {
+                long bits = l.numbered[r * l.rowWords + w];
+                while (bits != 0) {
+                    int c = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    int p = l.pillarIndex[r * l.cols + c];
+                    int open = 0;
+                    if (r + 1 < l.rows && !isPillar(r + 1, c)) { open++; }
+                    if (r - 1 >= 0 && !isPillar(r - 1, c)) { open++; }
+                    if (c + 1 < l.cols && !isPillar(r, c + 1)) { open++; }
+                    if (c - 1 >= 0 && !isPillar(r, c - 1)) { open++; }
+                    this.pillarOpen[p] = (byte) open;
+                    if (isViolated(p, getDigit(r, c))) {
+                        this.violations++;
+                    }
+                    if (getDigit(r, c) > 0) {
+                        this.unmet++;
+                    }
+                }
+            }
+        }
+        for (int r = 0; r < this.layout.rows; r++) {
+            for (int c = 0; c < this.layout.cols; c++) {
+                if (tiles[r][c] == LasersModel.LASER) {
+                    //The model may hold lasers that see each other, remember that the state is broken
+                    if (hasConflict(r, c)) {
+                        this.conflicts++;
+                    }
+                    place(r, c);
+                }
+            }
+        }
+    }
+
+    /**
+     * The tiles of a model, indexed by row then column
+     */
+    private static char[][] tilesOf(LasersModel model) {
+        char[][] tiles = new char[model.getRows()][model.getCols()];
+        for (int r = 0; r < tiles.length; r++) {
+            for (int c = 0; c < tiles[r].length; c++) {
+                tiles[r][c] = model.getblock(r, c).getCharToDisplay();
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * A copy constructor. Only the bitsets that change during a search are copied,
+     * the layout of the safe is shared.
+     * @param other the state to copy
+     */
+    public SafeState(SafeState other) {
+        this.layout = other.layout;
+        this.lasersByRow = other.lasersByRow.clone();
+        this.lasersByCol = other.lasersByCol.clone();
+        this.rowBeams = other.rowBeams.clone();
+        this.colBeams = other.colBeams.clone();
+        this.conflicts = other.conflicts;
+        this.closed = other.closed.clone();
+        this.pillarLasers = other.pillarLasers.clone();
+        this.pillarOpen = other.pillarOpen.clone();
+        this.violations = other.violations;
+        this.unmet = other.unmet;
+        this.segOpen = other.segOpen.clone();
+        this.stranded = other.stranded.clone();
+        this.strandedCells = other.strandedCells;
+        this.unlit = other.unlit;
+    }
+
+    /**
+     * getter function for the number of rows
+     */
+    public int getRows() { return this.layout.rows; }
+
+    /**
+     * getter function for the number of columns
+     */
+    public int getCols() { return this.layout.cols; }
+
+    /**
+     * Is there a pillar, numbered or not, at (r,c)?
+     */
+    public boolean isPillar(int r, int c) {
+        return this.layout.isPillar(r, c);
+    }
+
+    /**
+     * The number on the pillar at (r,c)
+     * @return the required number of lasers, or -1 if (r,c) is not a numbered pillar
+     */
+    public int getDigit(int r, int c) {
+        return this.layout.digits[r * this.layout.cols + c];
+    }
+
+    /**
+     * getter function for the number of row and column segments. Row and column
+     * segments are numbered together, from 0 to getSegmentCount() - 1.
+     */
+    public int getSegmentCount() { return this.layout.segCount; }
+
+    /**
+     * The id of the row segment of the non-pillar cell (r,c)
+     */
+    public int getRowSegment(int r, int c) {
+        return this.layout.rowSegId[r * this.layout.cols + c];
+    }
+
+    /**
+     * The id of the column segment of the non-pillar cell (r,c)
+     */
+    public int getColSegment(int r, int c) {
+        return this.layout.colSegId[r * this.layout.cols + c];
+    }
+
+    /**
+     * Is the segment a row segment, as opposed to a column segment?
+     */
+    public boolean isRowSegment(int seg) {
+        return this.layout.segIsRow[seg];
+    }
+
+    /**
+     * The row of a row segment, or the column of a column segment
+     */
+    public int getSegmentLine(int seg) {
+        return this.layout.segLine[seg];
+    }
+
+    /**
+     * The first column of a row segment, or the first row of a column segment
+     */
+    public int getSegmentStart(int seg) {
+        return this.layout.segStart[seg];
+    }
+
+    /**
+     * The last column of a row segment, or the last row of a column segment
+     */
+    public int getSegmentEnd(int seg) {
+        return this.layout.segEnd[seg];
+    }
+
+    /**
+     * The number of open cells left in a segment
+     */
+    public int getSegmentOpen(int seg) {
+        return this.segOpen[seg];
+    }
+
+    /**
+     * Is there a laser at (r,c)?
+     */
+    public boolean isLaser(int r, int c) {
+        return testBit(this.lasersByRow, r * this.layout.rowWords, c);
+    }
+
+    /**
+     * Is (r,c) covered by a laser or a beam?
+     */
+    public boolean isLit(int r, int c) {
+        return testBit(this.rowBeams, r * this.layout.rowWords, c)
+                || testBit(this.colBeams, c * this.layout.colWords, r);
+    }
+
+    /**
+     * Could a laser still be placed at (r,c)? It must not be a pillar, a laser, lit,
+     * or closed.
+     */
+    public boolean isOpen(int r, int c) {
+        return !isPillar(r, c) && this.closed[r * this.layout.cols + c] == 0;
+    }
+
+    /**
+     * Would a laser at (r,c) see another laser? Only the lasers in the row and
+     * column segments of (r,c) are visible, which are two bit ranges.
+     * @param r the row
+     * @param c the column
+     * @return true if another laser is in sight of (r,c)
+     */
+    public boolean hasConflict(int r, int c) {
+        Layout l = this.layout;
+        int cell = r * l.cols + c;
+        //a laser at (r,c) itself is not in conflict with itself, so look either side of it
+        return anyInRange(this.lasersByRow, r * l.rowWords, l.rowSegStart[cell], c - 1)
+                || anyInRange(this.lasersByRow, r * l.rowWords, c + 1, l.rowSegEnd[cell])
+                || anyInRange(this.lasersByCol, c * l.colWords, l.colSegStart[cell], r - 1)
+                || anyInRange(this.lasersByCol, c * l.colWords, r + 1, l.colSegEnd[cell]);
+    }
+
+    /**
+     * Places a laser at (r,c) and lights its row and column segments.
+     * The caller is responsible for (r,c) being an empty, non-pillar cell.
+     * @param r the row
+     * @param c the column
+     */
+    public void place(int r, int c) {
+        Layout l = this.layout;
+        int cell = r * l.cols + c;
+        setBit(this.lasersByRow, r * l.rowWords, c);
+        setBit(this.lasersByCol, c * l.colWords, r);
+        //Count the cells that go from unlit to lit, one beam at a time so the laser is counted once
+        for (int i = l.rowSegStart[cell]; i <= l.rowSegEnd[cell]; i++) {
+            if (!isLit(r, i)) { this.unlit--; }
+        }
+        setRange(this.rowBeams, r * l.rowWords, l.rowSegStart[cell], l.rowSegEnd[cell]);
+        for (int i = l.colSegStart[cell]; i <= l.colSegEnd[cell]; i++) {
+            if (!isLit(i, c)) { this.unlit--; }
+        }
+        setRange(this.colBeams, c * l.colWords, l.colSegStart[cell], l.colSegEnd[cell]);
+
+        //The laser and everything it lights can no longer take a laser
+        closeCell(cell);
+        for (int i = l.rowSegStart[cell]; i <= l.rowSegEnd[cell]; i++) {
+            closeCell(r * l.cols + i);
+        }
+        for (int i = l.colSegStart[cell]; i <= l.colSegEnd[cell]; i++) {
+            closeCell(i * l.cols + c);
+        }
+        neighbourLasersChanged(r, c, 1);
+    }
+
+    /**
+     * Removes the laser at (r,c) along with the beams it produced. Since no two
+     * lasers of a state share a segment, the whole segments go dark.
+     * @param r the row
+     * @param c the column
+     */
+    public void remove(int r, int c) {
+        Layout l = this.layout;
+        int cell = r * l.cols + c;
+        clearBit(this.lasersByRow, r * l.rowWords, c);
+        clearBit(this.lasersByCol, c * l.colWords, r);
+        clearRange(this.rowBeams, r * l.rowWords, l.rowSegStart[cell], l.rowSegEnd[cell]);
+        for (int i = l.rowSegStart[cell]; i <= l.rowSegEnd[cell]; i++) {
+            if (!isLit(r, i)) { this.unlit++; }
+        }
+        clearRange(this.colBeams, c * l.colWords, l.colSegStart[cell], l.colSegEnd[cell]);
+        for (int i = l.colSegStart[cell]; i <= l.colSegEnd[cell]; i++) {
+            if (!isLit(i, c)) { this.unlit++; }
+        }
+
+        neighbourLasersChanged(r, c, -1);
+        for (int i = l.colSegEnd[cell]; i >= l.colSegStart[cell]; i--) {
+            openCell(i * l.cols + c);
+        }
+        for (int i = l.rowSegEnd[cell]; i >= l.rowSegStart[cell]; i--) {
+            openCell(r * l.cols + i);
+        }
+        openCell(cell);
+        //The cells that went dark may now be stranded
+        refreshSegment(l.rowSegId[cell]);
+        refreshSegment(l.colSegId[cell]);
+    }
+
+    /**
+     * Closes (r,c) so that no laser will be placed there, for example once the
+     * search has moved past it. Closing is counted, so a cell must be reopened
+     * as many times as it was closed.
+     * @param r the row
+     * @param c the column
+     */
+    public void close(int r, int c) {
+        closeCell(r * this.layout.cols + c);
+    }
+
+    /**
+     * Takes back one close(r,c)
+     * @param r the row
+     * @param c the column
+     */
+    public void reopen(int r, int c) {
+        openCell(r * this.layout.cols + c);
+    }
+
+    /**
+     * Adds a reason for a cell not to take a laser. If it was open, the
+     * numbered pillars around it lose an open neighbour.
+     */
+    private void closeCell(int cell) {
+        if (this.closed[cell]++ == 0) {
+            neighbourOpenChanged(cell / this.layout.cols, cell % this.layout.cols, -1);
+            //A segment that just lost its last open cell may have stranded some of its cells
+            if (--this.segOpen[this.layout.rowSegId[cell]] == 0) {
+                refreshSegment(this.layout.rowSegId[cell]);
+            }
+            if (--this.segOpen[this.layout.colSegId[cell]] == 0) {
+                refreshSegment(this.layout.colSegId[cell]);
+            }
+        }
+    }
+
+    /**
+     * Takes away a reason for a cell not to take a laser. If it is open again,
+     * the numbered pillars around it gain an open neighbour.
+     */
+    private void openCell(int cell) {
+        if (--this.closed[cell] == 0) {
+            neighbourOpenChanged(cell / this.layout.cols, cell % this.layout.cols, 1);
+            //A segment that just got back an open cell may no longer strand its cells
+            if (++this.segOpen[this.layout.rowSegId[cell]] == 1) {
+                refreshSegment(this.layout.rowSegId[cell]);
+            }
+            if (++this.segOpen[this.layout.colSegId[cell]] == 1) {
+                refreshSegment(this.layout.colSegId[cell]);
+            }
+        }
+    }
+
+    /**
+     * Works out again whether each cell of a segment is stranded
+     */
+    private void refreshSegment(int seg) {
+        Layout l = this.layout;
+        for (int i = l.segStart[seg]; i <= l.segEnd[seg]; i++) {
+            int cell = l.segCell(seg, i);
+            boolean now = this.segOpen[l.rowSegId[cell]] == 0 && this.segOpen[l.colSegId[cell]] == 0
+                    && !isLit(cell / l.cols, cell % l.cols);
+            if (now != this.stranded[cell]) {
+                this.stranded[cell] = now;
+                this.strandedCells += now ? 1 : -1;
+            }
+        }
+    }
+
+    /**
+     * Adjusts the laser counts of the numbered pillars next to (r,c)
+     */
+    private void neighbourLasersChanged(int r, int c, int delta) {
+        if (r + 1 < this.layout.rows) { adjustPillar(r + 1, c, delta, 0); }
+        if (r - 1 >= 0) { adjustPillar(r - 1, c, delta, 0); }
+        if (c + 1 < this.layout.cols) { adjustPillar(r, c + 1, delta, 0); }
+        if (c - 1 >= 0) { adjustPillar(r, c - 1, delta, 0); }
+    }
+
+    /**
+     * Adjusts the open neighbour counts of the numbered pillars next to (r,c)
+     */
+    private void neighbourOpenChanged(int r, int c, int delta) {
+        if (r + 1 < this.layout.rows) { adjustPillar(r + 1, c, 0, delta); }
+        if (r - 1 >= 0) { adjustPillar(r - 1, c, 0, delta); }
+        if (c + 1 < this.layout.cols) { adjustPillar(r, c + 1, 0, delta); }
+        if (c - 1 >= 0) { adjustPillar(r, c - 1, 0, delta); }
+    }
+
+    /**
+     * Changes the counts of the numbered pillar at (r,c), if there is one, keeping
+     * the number of violated and unmet pillars up to date.
+     */
+    private void adjustPillar(int r, int c, int lasers, int open) {
+        int cell = r * this.layout.cols + c;
+        int p = this.layout.pillarIndex[cell];
+        if (p < 0) {
+            return;
+        }
+        int digit = this.layout.digits[cell];
+        boolean wasViolated = isViolated(p, digit);
+        boolean wasUnmet = this.pillarLasers[p] < digit;
+        this.pillarLasers[p] += lasers;
+        this.pillarOpen[p] += open;
+        this.violations += (isViolated(p, digit) ? 1 : 0) - (wasViolated ? 1 : 0);
+        this.unmet += (this.pillarLasers[p] < digit ? 1 : 0) - (wasUnmet ? 1 : 0);
+    }
+
+    /**
+     * A numbered pillar is violated when it has more lasers than its number, or
+     * too few open neighbours left to ever reach it.
+     */
+    private boolean isViolated(int p, int digit) {
+        return this.pillarLasers[p] > digit || this.pillarLasers[p] + this.pillarOpen[p] < digit;
+    }
+
+    /**
+     * Counts the lasers next to (r,c)
+     * @param r the row
+     * @param c the column
+     * @return the number of lasers adjacent to (r,c)
+     */
+    public int adjacentLasers(int r, int c) {
+        int counter = 0;
+        if (r + 1 < this.layout.rows && isLaser(r + 1, c)) { counter++; }
+        if (r - 1 >= 0 && isLaser(r - 1, c)) { counter++; }
+        if (c + 1 < this.layout.cols && isLaser(r, c + 1)) { counter++; }
+        if (c - 1 >= 0 && isLaser(r, c - 1)) { counter++; }
+        return counter;
+    }
+
+    /**
+     * Checks that no lasers see each other, that every numbered pillar can
+     * still have exactly its number of lasers, and that every cell can still
+     * be lit. All of these are kept as counts, so this takes constant time.
+     * @return true if the state can still lead to a solution
+     */
+    public boolean isSafeValid() {
+        return this.conflicts == 0 && this.violations == 0 && this.strandedCells == 0;
+    }
+
+    /**
+     * Is some numbered pillar over its number, or unable to reach it any more?
+     */
+    public boolean hasViolatedPillar() {
+        return this.violations > 0;
+    }
+
+    /**
+     * Is some cell unlit with no open cell left in its row or column segment?
+     */
+    public boolean hasStrandedCell() {
+        return this.strandedCells > 0;
+    }
+
+    /**
+     * The bitset equivalent of LasersModel.verify. Every non-pillar cell must be lit,
+     * every numbered pillar must have exactly its number of lasers, and no lasers
+     * may see each other. All three are kept as counts.
+     * @return true if the state is a solved safe
+     */
+    public boolean isSolved() {
+        return this.conflicts == 0 && this.violations == 0 && this.unmet == 0 && this.unlit == 0;
+    }
+
+    /**
+     * A summary of the state that decides how it can still be solved: which
+     * cells are lit, which are open, and how many lasers each numbered pillar
+     * has. Two states of the same safe with the same signature have exactly
+     * the same ways to finish, whatever lasers got them there.
+     * @return the signature, two bits per cell followed by a byte per numbered pillar
+     */
+    long[] signature() {
+        Layout l = this.layout;
+        int cells = l.rows * l.cols;
+        long[] sig = new long[(2 * cells + 63) / 64 + (l.numberedCount + 7) / 8];
+        for (int cell = 0; cell < cells; cell++) {
+            int r = cell / l.cols;
+            int c = cell % l.cols;
+            if (isLit(r, c)) {
+                sig[(2 * cell) >>> 6] |= 1L << (2 * cell);
+            }
+            if (this.closed[cell] == 0) {
+                sig[(2 * cell + 1) >>> 6] |= 1L << (2 * cell + 1);
+            }
+        }
+        int base = (2 * cells + 63) / 64;
+        for (int p = 0; p < l.numberedCount; p++) {
+            sig[base + p / 8] |= (long) this.pillarLasers[p] << (8 * (p % 8));
+        }
+        return sig;
+    }
+
+    /**
+     * Converts the state back into a LasersModel, for display.
+     * @return a new LasersModel with the pillars and lasers of this state
+     */
+    public LasersModel toModel() {
+        char[][] grid = new char[this.layout.rows][this.layout.cols];
+        for (int r = 0; r < this.layout.rows; r++) {
+            for (int c = 0; c < this.layout.cols; c++) {
+                if (isLaser(r, c)) {
+                    grid[r][c] = LasersModel.LASER;
+                } else if (getDigit(r, c) >= 0) {
+                    grid[r][c] = Character.forDigit(getDigit(r, c), 10);
+                } else if (isPillar(r, c)) {
+                    grid[r][c] = LasersModel.PILLAR;
+                } else {
+                    grid[r][c] = LasersModel.EMPTY;
+                }
+            }
+        }
+        return new LasersModel(grid);
+    }
+
+    private static boolean testBit(long[] bits, int base, int i) {
+        return (bits[base + (i >>> 6)] & (1L << i)) != 0;
+    }
+
+    private static void setBit(long[] bits, int base, int i) {
+        bits[base + (i >>> 6)] |= 1L << i;
+    }
+
+    private static void clearBit(long[] bits, int base, int i) {
+        bits[base + (i >>> 6)] &= ~(1L << i);
+    }
+
+    /**
+     * Is any bit from 'from' to 'to', inclusive, set? An empty range has no bits set.
+     */
+    private static boolean anyInRange(long[] bits, int base, int from, int to) {
+        if (from > to) {
+            return false;
+        }
+        int fw = from >>> 6;
+        int tw = to >>> 6;
+        long first = -1L << from;
+        long last = -1L >>> (63 - (to & 63));
+        if (fw == tw) {
+            return (bits[base + fw] & first & last) != 0;
+        }
+        if ((bits[base + fw] & first) != 0) {
+            return true;
+        }
+        for (int w = fw + 1; w < tw; w++) {
+            if (bits[base + w] != 0) {
+                return true;
+            }
+        }
+        return (bits[base + tw] & last) != 0;
+    }
+
+    /**
+     * Sets every bit from 'from' to 'to', inclusive
+     */
+    private static void setRange(long[] bits, int base, int from, int to) {
+        int fw = from >>> 6;
+        int tw = to >>> 6;
+        long first = -1L << from;
+        long last = -1L >>> (63 - (to & 63));
+        if (fw == tw) {
+            bits[base + fw] |= first & last;
+            return;
+        }
+        bits[base + fw] |= first;
+        for (int w = fw + 1; w < tw; w++) {
+            bits[base + w] = -1L;
+        }
+        bits[base + tw] |= last;
+    }
+
+    /**
+     * Clears every bit from 'from' to 'to', inclusive
+     */
+    private static void clearRange(long[] bits, int base, int from, int to) {
+        int fw = from >>> 6;
+        int tw = to >>> 6;
+        long first = -1L << from;
+        long last = -1L >>> (63 - (to & 63));
+        if (fw == tw) {
+            bits[base + fw] &= ~(first & last);
+            return;
+        }
+        bits[base + fw] &= ~first;
+        for (int w = fw + 1; w < tw; w++) {
+            bits[base + w] = 0;
+        }
+        bits[base + tw] &= ~last;
+    }
+}
@@ -0,0 +1,230 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A safe solving engine that encodes a safe as boolean clauses and hands
+ * them to the built in SatSolver. There is one variable per cell a laser
+ * could still go in, and:
+ *
+ *     - every cell that is not lit yet gets a clause saying some cell of its
+ *       row or column segment has a laser,
+ *     - every pair of cells in one segment gets a clause saying they do not
+ *       both have a laser,
+ *     - every numbered pillar gets clauses saying at most, and at least, the
+ *       number of lasers it still needs are next to it.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SatEngine implements SafeEngine {
+
+    /** Where to count the decisions made. May be null */
+    private SolverStats stats;
+
+    /**
+     * Sets where the decisions of the SAT solver are counted, as nodes
+     *
+     * @param stats the stats to count into, or null to stop counting
+     */
+    public void setStats(SolverStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public Optional<Configuration> solve(SafeConfig config) {
+        SafeState state = config.getState();
+        int[] varOf = new int[state.getRows() * state.getCols()];
+        SatSolver solver = encode(state, varOf);
+        boolean found = solver != null && solver.solve();
+        if (this.stats != null && solver != null) {
+            this.stats.nodesExpanded(solver.getDecisions());
+        }
+        if (!found) {
+            return Optional.empty();
+        }
+        return Optional.of(new SafeConfig(decode(state, solver, varOf)));
+    }
+
+    /**
+     * Looks for a solution of a safe other than a given one, to tell whether
+     * the given solution is the only one.
+     *
+     * @param config   the safe
+     * @param solution a solution of the safe
+     * @return a different solution, or empty if the given one is the only one
+     */
+    public Optional<Configuration> solveOther(SafeConfig config, SafeConfig solution) {
+        SafeState state = config.getState();
+        SafeState known = solution.getState();
+        int[] varOf = new int[state.getRows() * state.getCols()];
+        SatSolver solver = encode(state, varOf);
+        if (solver == null) {
+            return Optional.empty();
+        }
+        //Some cell that could take a laser must differ from the known solution
+        int[] differ = new int[varOf.length];
+        int size = 0;
+        for (int cell = 0; cell < varOf.length; cell++) {
+            if (varOf[cell] > 0) {
+                boolean laser = known.isLaser(cell / state.getCols(), cell % state.getCols());
+                differ[size++] = laser ? -varOf[cell] : varOf[cell];
+            }
+        }
+        int[] exact = new int[size];
+        System.arraycopy(differ, 0, exact, 0, size);
+        boolean found = solver.addClause(exact) && solver.solve();
+        if (this.stats != null) {
+            this.stats.nodesExpanded(solver.getDecisions());
+        }
+        if (!found) {
+            return Optional.empty();
+        }
+        return Optional.of(new SafeConfig(decode(state, solver, varOf)));
+    }
+
+    /**
+     * Builds the clauses for a safe.
+     *
+     * @param state the safe; lasers already placed are kept
+     * @param varOf filled in with the variable of each cell, 0 for cells that cannot take a laser
+     * @return the solver holding the clauses, or null if the safe is unsolvable as it stands
+     */
+    static SatSolver encode(SafeState state, int[] varOf) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+        if (!state.isSafeValid()) {
+            return null;
+        }
+        int vars = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                varOf[r * cols + c] = state.isOpen(r, c) ? ++vars : 0;
+            }
+        }
+        SatSolver solver = new SatSolver(vars);
+
+        //At most one laser per segment, pairwise
+        for (int seg = 0; seg < state.getSegmentCount(); seg++) {
+            int[] segVars = segmentVars(state, seg, varOf);
+            for (int i = 0; i < segVars.length; i++) {
+                for (int j = i + 1; j < segVars.length; j++) {
+                    solver.addClause(-segVars[i], -segVars[j]);
+                }
+            }
+        }
+
+        //Every unlit cell is lit from its row or column segment
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (state.isPillar(r, c) || state.isLit(r, c)) {
+                    continue;
+                }
+                int[] rowVars = segmentVars(state, state.getRowSegment(r, c), varOf);
+                int[] colVars = segmentVars(state, state.getColSegment(r, c), varOf);
+                int[] clause = new int[rowVars.length + colVars.length];
+                int size = 0;
+                for (int v : rowVars) {
+                    clause[size++] = v;
+                }
+                //the cell itself is in both segments
+                for (int v : colVars) {
+                    if (v != varOf[r * cols + c]) {
+                        clause[size++] = v;
+                    }
+                }
+                int[] exact = new int[size];
+                System.arraycopy(clause, 0, exact, 0, size);
+                if (!solver.addClause(exact)) {
+                    return null;
+                }
+            }
+        }
+
+        //Numbered pillars get exactly as many more lasers as they still need
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (state.getDigit(r, c) < 0) {
+                    continue;
+                }
+                List<Integer> around = new ArrayList<>();
+                if (r + 1 < rows && varOf[(r + 1) * cols + c] > 0) { around.add(varOf[(r + 1) * cols + c]); }
+                if (r - 1 >= 0 && varOf[(r - 1) * cols + c] > 0) { around.add(varOf[(r - 1) * cols + c]); }
+                if (c + 1 < cols && varOf[r * cols + c + 1] > 0) { around.add(varOf[r * cols + c + 1]); }
+                if (c - 1 >= 0 && varOf[r * cols + c - 1] > 0) { around.add(varOf[r * cols + c - 1]); }
+                int need = state.getDigit(r, c) - state.adjacentLasers(r, c);
+                if (need < 0 || need > around.size()) {
+                    return null;
+                }
+                //Any need + 1 of them cannot all be lasers, and any size - need + 1 cannot all be empty
+                boolean ok = addSubsets(solver, around, need + 1, -1)
+                        && addSubsets(solver, around, around.size() - need + 1, 1);
+                if (!ok) {
+                    return null;
+                }
+            }
+        }
+        return solver;
+    }
+
+    /**
+     * Places a laser in the state copy for every variable the solver set to true
+     */
+    static SafeState decode(SafeState state, SatSolver solver, int[] varOf) {
+        SafeState solved = new SafeState(state);
+        for (int cell = 0; cell < varOf.length; cell++) {
+            if (varOf[cell] > 0 && solver.value(varOf[cell])) {
+                solved.place(cell / state.getCols(), cell % state.getCols());
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * The variables of the cells in a segment that can still take a laser
+     */
+    private static int[] segmentVars(SafeState state, int seg, int[] varOf) {
+        int start = state.getSegmentStart(seg);
+        int end = state.getSegmentEnd(seg);
+        int line = state.getSegmentLine(seg);
+        int[] found = new int[end - start + 1];
+        int size = 0;
+        for (int i = start; i <= end; i++) {
+            int cell = state.isRowSegment(seg) ? line * state.getCols() + i : i * state.getCols() + line;
+            if (varOf[cell] > 0) {
+                found[size++] = varOf[cell];
+            }
+        }
+        int[] exact = new int[size];
+        System.arraycopy(found, 0, exact, 0, size);
+        return exact;
+    }
+
+    /**
+     * Adds one clause for every subset of a given size, with every literal of the given sign.
+     * A pillar has at most four neighbours, so there are few subsets.
+     */
+    private static boolean addSubsets(SatSolver solver, List<Integer> vars, int size, int sign) {
+        if (size > vars.size()) {
+            return true;
+        }
+        for (int mask = 0; mask < (1 << vars.size()); mask++) {
+            if (Integer.bitCount(mask) != size) {
+                continue;
+            }
+            int[] clause = new int[size];
+            int k = 0;
+            for (int i = 0; i < vars.size(); i++) {
+                if ((mask & (1 << i)) != 0) {
+                    clause[k++] = sign * vars.get(i);
+                }
+            }
+            if (!solver.addClause(clause)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,648 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A small, self-contained CDCL boolean satisfiability solver, in the style
+ * of MiniSat. It has two watched literals per clause for unit propagation,
+ * first-UIP clause learning with non-chronological backjumping, VSIDS
+ * variable activities kept in a heap, phase saving, and restarts following
+ * the Luby sequence. Learnt clauses have activities of their own, and once
+ * there are too many of them the less active half is thrown away, so the
+ * clause database does not grow with every conflict.
+ *
+ * Variables are numbered from 1, and clauses are given as in the DIMACS
+ * format: v for the variable being true, -v for it being false. Clauses may
+ * be added again after solve() returns, so the solver can be asked for
+ * another solution by adding a clause that blocks the last one.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SatSolver {
+
+    /** conflicts in the first restart, multiplied by the Luby sequence for the rest */
+    private static final int RESTART_BASE = 100;
+
+    /** how quickly the activity of variables not in recent conflicts fades */
+    private static final double VAR_DECAY = 0.95;
+
+    /** how quickly the activity of learnt clauses not in recent conflicts fades */
+    private static final double CLAUSE_DECAY = 0.999;
+
+    /** the fewest learnt clauses kept before any are thrown away */
+    private static final int MIN_LEARNTS = 1000;
+
+    /** how much the number of learnt clauses kept grows each time some are thrown away */
+    private static final double LEARNT_GROWTH = 1.1;
+
+    private final int numVars;
+
+    //All clauses, original and learnt, null where a learnt clause was thrown away.
+    //A literal is 2 * var for true and 2 * var + 1 for false
+    private final List<int[]> clauses = new ArrayList<>();
+
+    //Per clause, whether it was learnt and its activity; the indices of thrown away
+    //clauses, which new clauses are given first; and how many learnt clauses to keep
+    private boolean[] learnt = new boolean[16];
+    private double[] clauseActivity = new double[16];
+    private double clauseInc = 1.0;
+    private int[] freeIndices = new int[16];
+    private int numFree;
+    private int numLearnts;
+    private double maxLearnts;
+
+    //Per literal, the clauses watching it, which are looked at when it becomes false
+    private final int[][] watches;
+    private final int[] watchSizes;
+
+    //Per variable: 1 for true, -1 for false, 0 while unassigned, then its decision level,
+    //the clause that implied it (-1 for decisions), and the phase it was last given
+    private final int[] assigns;
+    private final int[] level;
+    private final int[] reason;
+    private final boolean[] polarity;
+    private final boolean[] seen;
+
+    //The assigned literals in order, and where each decision level starts
+    private final int[] trail;
+    private int trailSize;
+    private int qhead;
+    private final int[] trailLim;
+    private int decisionLevel;
+
+    //VSIDS activities and the heap ordering unassigned variables by them
+    private final double[] activity;
+    private double varInc = 1.0;
+    private final int[] heap;
+    private final int[] heapIndex;
+    private int heapSize;
+
+    //false once the clauses are known to be unsatisfiable
+    private boolean ok = true;
+    private boolean[] model;
+
+    private long conflicts;
+    private long decisions;
+    private long propagations;
+    private long learntsRemoved;
+
+    /**
+     * Creates a solver for variables 1 to numVars, with no clauses.
+     *
+     * @param numVars the number of variables
+     */
+    public SatSolver(int numVars) {
+        this.numVars = numVars;
+        this.watches = new int[2 * numVars + 2][];
+        this.watchSizes = new int[2 * numVars + 2];
+        for (int i = 0; i < this.watches.length; i++) {
+            this.watches[i] = new int[4];
+        }
+        this.assigns = new int[numVars + 1];
+        this.level = new int[numVars + 1];
+        this.reason = new int[numVars + 1];
+        this.polarity = new boolean[numVars + 1];
+        this.seen = new boolean[numVars + 1];
+        this.trail = new int[numVars + 1];
+        this.trailLim = new int[numVars + 1];
+        this.activity = new double[numVars + 1];
+        this.heap = new int[numVars + 1];
+        this.heapIndex = new int[numVars + 1];
+        Arrays.fill(this.heapIndex, -1);
+        Arrays.fill(this.reason, -1);
+        for (int v = 1; v <= numVars; v++) {
+            heapInsert(v);
+        }
+    }
+
+    /**
+     * getter function for the number of variables
+     */
+    public int getNumVars() { return this.numVars; }
+
+    /**
+     * getter function for the number of conflicts so far
+     */
+    public long getConflicts() { return this.conflicts; }
+
+    /**
+     * getter function for the number of decisions so far
+     */
+    public long getDecisions() { return this.decisions; }
+
+    /**
+     * getter function for the number of literals propagated so far
+     */
+    public long getPropagations() { return this.propagations; }
+
+    /**
+     * getter function for the number of learnt clauses kept
+     */
+    public int getLearnts() { return this.numLearnts; }
+
+    /**
+     * getter function for the number of learnt clauses thrown away so far
+     */
+    public long getLearntsRemoved() { return this.learntsRemoved; }
+
+    /**
+     * Adds a clause, in DIMACS form.
+     *
+     * @param lits the literals of the clause; v for true, -v for false
+     * @return false if the clauses are now known to be unsatisfiable
+     */
+    public boolean addClause(int... lits) {
+        if (!this.ok) {
+            return false;
+        }
+        cancelUntil(0);
+        int[] clause = new int[lits.length];
+        int size = 0;
+        for (int dimacs : lits) {
+            int lit = dimacs > 0 ? 2 * dimacs : 2 * -dimacs + 1;
+            int value = litValue(lit);
+            //Already true at the top level, the whole clause is satisfied
+            if (value == 1) {
+                return true;
+            }
+            //Already false at the top level, or a repeat, the literal adds nothing
+            boolean skip = value == -1;
+            for (int i = 0; i < size && !skip; i++) {
+                if (clause[i] == lit) {
+                    skip = true;
+                } else if (clause[i] == (lit ^ 1)) {
+                    return true;
+                }
+            }
+            if (!skip) {
+                clause[size++] = lit;
+            }
+        }
+        if (size == 0) {
+            this.ok = false;
+        } else if (size == 1) {
+            enqueue(clause[0], -1);
+            this.ok = propagate() == -1;
+        } else {
+            attach(Arrays.copyOf(clause, size), false);
+        }
+        return this.ok;
+    }
+
+    /**
+     * Searches for an assignment satisfying every clause.
+     *
+     * @return true if one was found, available from value(); false if there is none
+     */
+    public boolean solve() {
+        if (!this.ok) {
+            return false;
+        }
+        cancelUntil(0);
+        if (propagate() != -1) {
+            this.ok = false;
+            return false;
+        }
+        this.maxLearnts = Math.max(MIN_LEARNTS, (this.clauses.size() - this.numFree - this.numLearnts) / 3.0);
+        for (int restart = 0; ; restart++) {
+            int result = search(luby(restart) * RESTART_BASE);
+            if (result != 0) {
+                if (result > 0) {
+                    this.model = new boolean[this.numVars + 1];
+                    for (int v = 1; v <= this.numVars; v++) {
+                        this.model[v] = this.assigns[v] == 1;
+                    }
+                }
+                cancelUntil(0);
+                return result > 0;
+            }
+        }
+    }
+
+    /**
+     * The value of a variable in the assignment found by the last successful solve()
+     *
+     * @param var the variable
+     * @return true if it is true
+     */
+    public boolean value(int var) {
+        return this.model[var];
+    }
+
+    /**
+     * Runs the search until a result or until the conflict limit of this restart.
+     *
+     * @param conflictLimit conflicts allowed before restarting
+     * @return 1 for satisfiable, -1 for unsatisfiable, 0 to restart
+     */
+    private int search(long conflictLimit) {
+        long conflictsHere = 0;
+        int[] learnt = new int[this.numVars + 1];
+        while (true) {
+            int confl = propagate();
+            if (confl != -1) {
+                this.conflicts++;
+                conflictsHere++;
+                if (this.decisionLevel == 0) {
+                    this.ok = false;
+                    return -1;
+                }
+                int size = analyze(confl, learnt);
+                //Jump back to the second highest level in the learnt clause, where it becomes unit
+                int backLevel = size == 1 ? 0 : this.level[learnt[1] >> 1];
+                cancelUntil(backLevel);
+                if (size == 1) {
+                    enqueue(learnt[0], -1);
+                } else {
+                    int index = attach(Arrays.copyOf(learnt, size), true);
+                    bumpClause(index);
+                    enqueue(learnt[0], index);
+                }
+                this.varInc /= VAR_DECAY;
+                this.clauseInc /= CLAUSE_DECAY;
+            } else {
+                if (conflictsHere >= conflictLimit) {
+                    cancelUntil(0);
+                    return 0;
+                }
+                if (this.numLearnts - this.trailSize >= this.maxLearnts) {
+                    reduceLearnts();
+                    this.maxLearnts *= LEARNT_GROWTH;
+                }
+                int next = pickBranchVar();
+                if (next == 0) {
+                    return 1;
+                }
+                this.decisions++;
+                this.trailLim[this.decisionLevel++] = this.trailSize;
+                enqueue(this.polarity[next] ? 2 * next : 2 * next + 1, -1);
+            }
+        }
+    }
+
+    /**
+     * Unit propagation over the two watched literals of each clause.
+     *
+     * @return the index of a clause with every literal false, or -1 if there is none
+     */
+    private int propagate() {
+        while (this.qhead < this.trailSize) {
+            int falseLit = this.trail[this.qhead++] ^ 1;
+            this.propagations++;
+            int[] ws = this.watches[falseLit];
+            int n = this.watchSizes[falseLit];
+            int i = 0;
+            int j = 0;
+            while (i < n) {
+                int index = ws[i++];
+                int[] c = this.clauses.get(index);
+                //Keep the false literal in the second spot
+                if (c[0] == falseLit) {
+                    c[0] = c[1];
+                    c[1] = falseLit;
+                }
+                if (litValue(c[0]) == 1) {
+                    ws[j++] = index;
+                    continue;
+                }
+                //Look for another literal to watch
+                boolean moved = false;
+                for (int k = 2; k < c.length; k++) {
+                    if (litValue(c[k]) != -1) {
+                        c[1] = c[k];
+                        c[k] = falseLit;
+                        watch(c[1], index);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) {
+                    continue;
+                }
+                ws[j++] = index;
+                if (litValue(c[0]) == -1) {
+                    //Conflict, keep the rest of the watches and stop
+                    while (i < n) {
+                        ws[j++] = ws[i++];
+                    }
+                    this.watchSizes[falseLit] = j;
+                    this.qhead = this.trailSize;
+                    return index;
+                }
+                enqueue(c[0], index);
+            }
+            this.watchSizes[falseLit] = j;
+        }
+        return -1;
+    }
+
+    /**
+     * First-UIP conflict analysis. Walks the trail backwards resolving the
+     * conflict clause with reasons until one literal of the current level is left.
+     *
+     * @param confl  the conflicting clause
+     * @param learnt where to write the learnt clause; the asserting literal
+     *               goes first and the highest of the rest second
+     * @return the size of the learnt clause
+     */
+    private int analyze(int confl, int[] learnt) {
+        int size = 1;
+        int pathCount = 0;
+        int p = -1;
+        int index = this.trailSize - 1;
+        do {
+            int[] c = this.clauses.get(confl);
+            if (this.learnt[confl]) {
+                bumpClause(confl);
+            }
+            for (int j = p == -1 ? 0 : 1; j < c.length; j++) {
+                int q = c[j];
+                int v = q >> 1;
+                if (!this.seen[v] && this.level[v] > 0) {
+                    bumpActivity(v);
+                    this.seen[v] = true;
+                    if (this.level[v] >= this.decisionLevel) {
+                        pathCount++;
+                    } else {
+                        learnt[size++] = q;
+                    }
+                }
+            }
+            while (!this.seen[this.trail[index] >> 1]) {
+                index--;
+            }
+            p = this.trail[index--];
+            confl = this.reason[p >> 1];
+            this.seen[p >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt[0] = p ^ 1;
+
+        //Put the literal of the highest remaining level second, so it is watched
+        int highest = 1;
+        for (int i = 1; i < size; i++) {
+            this.seen[learnt[i] >> 1] = false;
+            if (this.level[learnt[i] >> 1] > this.level[learnt[highest] >> 1]) {
+                highest = i;
+            }
+        }
+        if (size > 1) {
+            int swap = learnt[1];
+            learnt[1] = learnt[highest];
+            learnt[highest] = swap;
+        }
+        return size;
+    }
+
+    /**
+     * Undoes every assignment above a decision level, saving their phases.
+     */
+    private void cancelUntil(int target) {
+        if (this.decisionLevel <= target) {
+            return;
+        }
+        for (int i = this.trailSize - 1; i >= this.trailLim[target]; i--) {
+            int v = this.trail[i] >> 1;
+            this.polarity[v] = this.assigns[v] == 1;
+            this.assigns[v] = 0;
+            this.reason[v] = -1;
+            heapInsert(v);
+        }
+        this.trailSize = this.trailLim[target];
+        this.qhead = this.trailSize;
+        this.decisionLevel = target;
+    }
+
+    /**
+     * The unassigned variable with the highest activity
+     *
+     * @return the variable, or 0 if every variable is assigned
+     */
+    private int pickBranchVar() {
+        while (this.heapSize > 0) {
+            int v = heapRemoveMax();
+            if (this.assigns[v] == 0) {
+                return v;
+            }
+        }
+        return 0;
+    }
+
+    private void enqueue(int lit, int from) {
+        int v = lit >> 1;
+        this.assigns[v] = (lit & 1) == 0 ? 1 : -1;
+        this.level[v] = this.decisionLevel;
+        this.reason[v] = from;
+        this.trail[this.trailSize++] = lit;
+    }
+
+    /**
+     * 1 if a literal is true, -1 if false, 0 if unassigned
+     */
+    private int litValue(int lit) {
+        int value = this.assigns[lit >> 1];
+        return (lit & 1) == 0 ? value : -value;
+    }
+
+    /**
+     * Adds a clause of two or more literals and watches its first two
+     *
+     * @param clause    the literals
+     * @param isLearnt  true for a clause learnt from a conflict, which may be thrown away later
+     * @return the index of the clause
+     */
+    private int attach(int[] clause, boolean isLearnt) {
+        int index;
+        if (this.numFree > 0) {
+            index = this.freeIndices[--this.numFree];
+            this.clauses.set(index, clause);
+        } else {
+            index = this.clauses.size();
+            this.clauses.add(clause);
+            if (index == this.learnt.length) {
+                this.learnt = Arrays.copyOf(this.learnt, 2 * index);
+                this.clauseActivity = Arrays.copyOf(this.clauseActivity, 2 * index);
+            }
+        }
+        this.learnt[index] = isLearnt;
+        this.clauseActivity[index] = 0;
+        if (isLearnt) {
+            this.numLearnts++;
+        }
+        watch(clause[0], index);
+        watch(clause[1], index);
+        return index;
+    }
+
+    /**
+     * Throws away the less active half of the learnt clauses. Binary clauses
+     * are kept, and so is any clause that is the reason for a literal now on
+     * the trail. The thrown away clauses are taken out of every watch list,
+     * so their indices can be given to new clauses.
+     */
+    private void reduceLearnts() {
+        //The activities of the clauses that may go, to find the median
+        double[] candidates = new double[this.numLearnts];
+        int count = 0;
+        for (int i = 0; i < this.clauses.size(); i++) {
+            if (this.learnt[i] && removable(i)) {
+                candidates[count++] = this.clauseActivity[i];
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Arrays.sort(candidates, 0, count);
+        double median = candidates[count / 2];
+        int toRemove = count / 2;
+        boolean[] removed = new boolean[this.clauses.size()];
+        //Everything below the median goes, then as many at the median as make up half
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < this.clauses.size() && toRemove > 0; i++) {
+                double act = this.clauseActivity[i];
+                if (this.learnt[i] && !removed[i] && (pass == 0 ? act < median : act == median) && removable(i)) {
+                    removed[i] = true;
+                    toRemove--;
+                }
+            }
+        }
+        for (int i = 0; i < this.clauses.size(); i++) {
+            if (removed[i]) {
+                this.clauses.set(i, null);
+                this.learnt[i] = false;
+                this.numLearnts--;
+                this.learntsRemoved++;
+                if (this.numFree == this.freeIndices.length) {
+                    this.freeIndices = Arrays.copyOf(this.freeIndices, 2 * this.numFree);
+                }
+                this.freeIndices[this.numFree++] = i;
+            }
+        }
+        for (int lit = 0; lit < this.watches.length; lit++) {
+            int[] ws = this.watches[lit];
+            int j = 0;
+            for (int i = 0; i < this.watchSizes[lit]; i++) {
+                if (!removed[ws[i]]) {
+                    ws[j++] = ws[i];
+                }
+            }
+            this.watchSizes[lit] = j;
+        }
+    }
+
+    /**
+     * Whether a learnt clause may be thrown away: it has more than two
+     * literals and is not the reason its first literal is true
+     */
+    private boolean removable(int index) {
+        int[] c = this.clauses.get(index);
+        return c.length > 2 && !(this.reason[c[0] >> 1] == index && litValue(c[0]) == 1);
+    }
+
+    private void bumpClause(int index) {
+        this.clauseActivity[index] += this.clauseInc;
+        //Keep the activities from overflowing
+        if (this.clauseActivity[index] > 1e20) {
+            for (int i = 0; i < this.clauses.size(); i++) {
+                this.clauseActivity[i] *= 1e-20;
+            }
+            this.clauseInc *= 1e-20;
+        }
+    }
+
+    private void watch(int lit, int index) {
+        if (this.watchSizes[lit] == this.watches[lit].length) {
+            this.watches[lit] = Arrays.copyOf(this.watches[lit], 2 * this.watches[lit].length);
+        }
+        this.watches[lit][this.watchSizes[lit]++] = index;
+    }
+
+    private void bumpActivity(int v) {
+        this.activity[v] += this.varInc;
+        //Keep the activities from overflowing
+        if (this.activity[v] > 1e100) {
+            for (int i = 1; i <= this.numVars; i++) {
+                this.activity[i] *= 1e-100;
+            }
+            this.varInc *= 1e-100;
+        }
+        if (this.heapIndex[v] >= 0) {
+            heapUp(this.heapIndex[v]);
+        }
+    }
+
+    /**
+     * The Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ...
+     */
+    private static long luby(int i) {
+        int size = 1;
+        int seq = 0;
+        while (size < i + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            seq--;
+            i = i % size;
+        }
+        return 1L << seq;
+    }
+
+    private void heapInsert(int v) {
+        if (this.heapIndex[v] >= 0) {
+            return;
+        }
+        this.heap[this.heapSize] = v;
+        this.heapIndex[v] = this.heapSize;
+        heapUp(this.heapSize++);
+    }
+
+    private int heapRemoveMax() {
+        int top = this.heap[0];
+        this.heapIndex[top] = -1;
+        this.heapSize--;
+        if (this.heapSize > 0) {
+            this.heap[0] = this.heap[this.heapSize];
+            this.heapIndex[this.heap[0]] = 0;
+            heapDown(0);
+        }
+        return top;
+    }
+
+    private void heapUp(int i) {
+        int v = this.heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (this.activity[this.heap[parent]] >= this.activity[v]) {
+                break;
+            }
+            this.heap[i] = this.heap[parent];
+            this.heapIndex[this.heap[i]] = i;
+            i = parent;
+        }
+        this.heap[i] = v;
+        this.heapIndex[v] = i;
+    }
+
+    private void heapDown(int i) {
+        int v = this.heap[i];
+        while (2 * i + 1 < this.heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < this.heapSize && this.activity[this.heap[child + 1]] > this.activity[this.heap[child]]) {
+                child++;
+            }
+            if (this.activity[this.heap[child]] <= this.activity[v]) {
+                break;
+            }
+            this.heap[i] = this.heap[child];
+            this.heapIndex[this.heap[i]] = i;
+            i = child;
+        }
+        this.heap[i] = v;
+        this.heapIndex[v] = i;
+    }
+}
@@ -0,0 +1,124 @@
+package backtracking;
+
+/**
+ * A limit on a search: a deadline, a budget of configurations, and a flag
+ * another thread can set to cancel it. A search checks the limit at every
+ * configuration it looks at, and once the limit is reached it gives up and
+ * returns no solution. Afterwards isStopped() tells a search that ran out
+ * of time or was cancelled apart from one that proved there is no solution.
+ *
+ * Configurations are counted by the searching thread, so a limit is meant
+ * for one search at a time. cancel() may be called from any thread, and so
+ * may the progress getters, which are brought up to date every so often.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SearchLimit {
+
+    /** how many configurations go by between looks at the clock */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    /** the deadline in System.nanoTime() terms, or 0 for none */
+    private final long deadline;
+
+    /** the most configurations to look at, or 0 for no limit */
+    private final long maxNodes;
+
+    private long nodes;
+    private int depth;
+    private volatile boolean cancelled;
+    private volatile boolean stopped;
+
+    //the nodes and depth as of the last look at the clock, for other threads to read
+    private volatile long progressNodes;
+    private volatile int progressDepth;
+
+    /**
+     * Initialize a new limit. The clock starts now.
+     *
+     * @param timeoutMillis how long the search may run, or 0 for no time limit
+     * @param maxNodes      how many configurations it may look at, or 0 for no limit
+     */
+    public SearchLimit(long timeoutMillis, long maxNodes) {
+        if (timeoutMillis < 0 || maxNodes < 0) {
+            throw new IllegalArgumentException("limits must not be negative: " + timeoutMillis + ", " + maxNodes);
+        }
+        this.deadline = timeoutMillis == 0 ? 0 : System.nanoTime() + timeoutMillis * 1_000_000L;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Initialize a new limit that only stops when cancelled
+     */
+    public SearchLimit() {
+        this(0, 0);
+    }
+
+    /**
+     * Cancels the search. It stops at the next configuration it looks at.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Called by a search for every configuration it looks at.
+     *
+     * @return true if the search must stop
+     */
+    public boolean reached() {
+        if (this.stopped) {
+            return true;
+        }
+        this.nodes++;
+        if (this.nodes % CLOCK_INTERVAL == 0) {
+            this.progressNodes = this.nodes;
+            this.progressDepth = this.depth;
+        }
+        if (this.cancelled
+                || (this.maxNodes > 0 && this.nodes > this.maxNodes)
+                || (this.deadline != 0 && this.nodes % CLOCK_INTERVAL == 0 && System.nanoTime() - this.deadline > 0)) {
+            this.stopped = true;
+        }
+        return this.stopped;
+    }
+
+    /**
+     * Called by a search that knows how deep it is for every configuration it looks at.
+     *
+     * @param depth the depth of the configuration, the starting one being 0
+     * @return true if the search must stop
+     */
+    public boolean reached(int depth) {
+        this.depth = depth;
+        return reached();
+    }
+
+    /**
+     * getter function for the configurations looked at, as of a moment ago. Safe
+     * to call from any thread while the search runs.
+     */
+    public long getProgressNodes() { return this.progressNodes; }
+
+    /**
+     * getter function for the depth of the search, as of a moment ago, if the
+     * search reports it. Safe to call from any thread while the search runs.
+     */
+    public int getProgressDepth() { return this.progressDepth; }
+
+    /**
+     * Did a search stop because of this limit, rather than finishing?
+     */
+    public boolean isStopped() { return this.stopped; }
+
+    /**
+     * getter function for whether cancel() has been called
+     */
+    public boolean isCancelled() { return this.cancelled; }
+
+    /**
+     * getter function for the number of configurations counted so far
+     */
+    public long getNodes() { return this.nodes; }
+}
@@ -0,0 +1,62 @@
+package backtracking;
+
+import java.util.Optional;
+
+/**
+ * The outcome of a search: the solution if there is one, together with the
+ * counters kept while finding it and how long it took.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SearchResult {
+    private final Optional<Configuration> solution;
+    private final SolverStats stats;
+    private final long elapsedNanos;
+    private final boolean stopped;
+
+    /**
+     * Initialize a new result.
+     *
+     * @param solution     the goal configuration, or empty if none was found
+     * @param stats        the counters of the search
+     * @param elapsedNanos how long the search took
+     * @param stopped      did the search give up before it was done?
+     */
+    public SearchResult(Optional<Configuration> solution, SolverStats stats, long elapsedNanos, boolean stopped) {
+        if (solution == null || stats == null) {
+            throw new IllegalArgumentException("solution and stats must not be null");
+        }
+        this.solution = solution;
+        this.stats = stats;
+        this.elapsedNanos = elapsedNanos;
+        this.stopped = stopped;
+    }
+
+    /**
+     * getter function for the goal configuration, or empty if none was found
+     */
+    public Optional<Configuration> getSolution() { return this.solution; }
+
+    /**
+     * getter function for the counters of the search
+     */
+    public SolverStats getStats() { return this.stats; }
+
+    /**
+     * getter function for how long the search took, in nanoseconds
+     */
+    public long getElapsedNanos() { return this.elapsedNanos; }
+
+    /**
+     * Did the search give up on its limit before it was done? If so, an empty
+     * solution does not mean there is none.
+     */
+    public boolean isStopped() { return this.stopped; }
+
+    @Override
+    public String toString() {
+        return (this.solution.isPresent() ? "Solved" : this.stopped ? "Stopped" : "No solution") +
+                " in " + this.elapsedNanos / 1_000_000.0 + " ms\n" + this.stats;
+    }
+}
@@ -0,0 +1,359 @@
+package backtracking;
+
+import model.LasersModel;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of solved safes in front of the backtracker. Rotating or mirroring
+ * a safe does not change whether or how it can be solved, so every safe is
+ * looked up by a canonical form: the smallest of its 8 rotations and mirror
+ * images. The solution is kept in the canonical orientation and turned back
+ * into the orientation of the safe asked about, so a rotated or mirrored copy
+ * of a safe solved before is a hit. Unsolvable safes are remembered too.
+ *
+ * The lasers already placed are part of the key, since they change what
+ * the solutions are. The cache is bounded by both a number of entries and an
+ * estimate of the bytes they take, and evicts the least recently used entry.
+ * It may be shared by many threads.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SolutionCache {
+
+    /** the bytes of a key before its tiles, holding the dimensions */
+    private static final int HEADER = 4;
+
+    /** a rough size of the objects around the arrays of an entry */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private long bytes;
+
+    /** the entries in least recently used order */
+    private final LinkedHashMap<Key, boolean[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** stored for a safe with no solution */
+    private static final boolean[] UNSOLVABLE = new boolean[0];
+
+    /**
+     * Initialize a new cache.
+     *
+     * @param maxEntries the most safes to keep, at least 1
+     * @param maxBytes   the most bytes to keep, roughly
+     */
+    public SolutionCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1: " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Solves a safe, or takes its solution from the cache. A miss is presolved,
+     * then solved in place by the iterative backtracker, and stored.
+     *
+     * @param safe the safe, with any lasers already placed
+     * @return the solution, or empty if there is none
+     */
+    public Optional<LasersModel> solve(LasersModel safe) {
+        return solve(safe, null);
+    }
+
+    /**
+     * Solves a safe under a limit, or takes its solution from the cache. A search
+     * stopped by the limit is not stored, since the safe is not known to be unsolvable.
+     *
+     * @param safe  the safe, with any lasers already placed
+     * @param limit when to give up searching, or null to search until done
+     * @return the solution, or empty if there is none or the search was stopped
+     */
+    public Optional<LasersModel> solve(LasersModel safe, SearchLimit limit) {
+        Lookup lookup = lookup(safe);
+        if (lookup.isHit()) {
+            return lookup.getSolution();
+        }
+        SafeConfig config = new SafeConfig(safe);
+        Backtracker bt = new Backtracker(false);
+        bt.setLimit(limit);
+        Optional<Configuration> sol = config.presolve().isConsistent()
+                ? bt.solveIterative(config) : Optional.empty();
+        Optional<LasersModel> solution = sol.map(solved -> ((SafeConfig) solved).getSafe());
+        if (limit == null || !limit.isStopped()) {
+            lookup.store(solution);
+        }
+        return solution;
+    }
+
+    /**
+     * Looks a safe up. On a miss, the caller can solve it and store() the result
+     * through the lookup, which saves working out the canonical form twice.
+     *
+     * @param safe the safe, with any lasers already placed
+     * @return the lookup
+     */
+    public Lookup lookup(LasersModel safe) {
+        Lookup lookup = new Lookup(safe);
+        synchronized (this) {
+            lookup.found = this.entries.get(lookup.key);
+        }
+        if (lookup.found != null) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+        }
+        return lookup;
+    }
+
+    /**
+     * getter function for the number of lookups that found a safe
+     */
+    public long getHits() { return this.hits.sum(); }
+
+    /**
+     * getter function for the number of lookups that did not
+     */
+    public long getMisses() { return this.misses.sum(); }
+
+    /**
+     * getter function for the number of entries thrown out to make room
+     */
+    public long getEvictions() { return this.evictions.sum(); }
+
+    /**
+     * getter function for the number of safes kept
+     */
+    public synchronized int size() { return this.entries.size(); }
+
+    /**
+     * getter function for the estimated bytes kept
+     */
+    public synchronized long getBytes() { return this.bytes; }
+
+    /**
+     * Empties the cache. The counters are kept.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Cache hits: " + getHits() + "\n" +
+                "Cache misses: " + getMisses() + "\n" +
+                "Cache evictions: " + getEvictions();
+    }
+
+    /**
+     * Stores a solution, then evicts until the cache is within its bounds
+     */
+    private synchronized void put(Key key, boolean[] lasers) {
+        boolean[] old = this.entries.put(key, lasers);
+        if (old != null) {
+            this.bytes -= sizeOf(key, old);
+        }
+        this.bytes += sizeOf(key, lasers);
+        Iterator<Map.Entry<Key, boolean[]>> eldest = this.entries.entrySet().iterator();
+        while (eldest.hasNext() && (this.entries.size() > this.maxEntries || this.bytes > this.maxBytes)) {
+            Map.Entry<Key, boolean[]> entry = eldest.next();
+            //the entry just stored stays, even if it is bigger than the whole cache
+            if (entry.getKey().equals(key)) {
+                break;
+            }
+            this.bytes -= sizeOf(entry.getKey(), entry.getValue());
+            eldest.remove();
+            this.evictions.increment();
+        }
+    }
+
+    /**
+     * The estimated bytes of an entry
+     */
+    private static long sizeOf(Key key, boolean[] lasers) {
+        return ENTRY_OVERHEAD + key.tiles.length + lasers.length;
+    }
+
+    /**
+     * The result of looking a safe up, in the orientation of that safe.
+     */
+    public class Lookup {
+        private final int rows;
+        private final int cols;
+        private final int symmetry;
+        private final Key key;
+        private boolean[] found;
+
+        private Lookup(LasersModel safe) {
+            this.rows = safe.getRows();
+            this.cols = safe.getCols();
+            char[] tiles = new char[this.rows * this.cols];
+            for (int r = 0; r < this.rows; r++) {
+                for (int c = 0; c < this.cols; c++) {
+                    char tile = safe.getblock(r, c).getCharToDisplay();
+                    //beams follow from the lasers
+                    tiles[r * this.cols + c] = tile == LasersModel.BEAM ? LasersModel.EMPTY : tile;
+                }
+            }
+            //the canonical form is the smallest of the 8 orientations
+            byte[] best = null;
+            int bestSymmetry = 0;
+            for (int s = 0; s < 8; s++) {
+                byte[] form = orient(tiles, s);
+                if (best == null || compare(form, best) < 0) {
+                    best = form;
+                    bestSymmetry = s;
+                }
+            }
+            this.symmetry = bestSymmetry;
+            this.key = new Key(best);
+        }
+
+        /**
+         * Was the safe in the cache?
+         */
+        public boolean isHit() { return this.found != null; }
+
+        /**
+         * The cached solution, turned to the orientation of the safe looked up.
+         *
+         * @return the solution, or empty if the safe has none
+         * @throws IllegalStateException if the lookup missed
+         */
+        public Optional<LasersModel> getSolution() {
+            if (this.found == null) {
+                throw new IllegalStateException("the safe is not in the cache");
+            }
+            if (this.found == UNSOLVABLE) {
+                return Optional.empty();
+            }
+            char[][] grid = new char[this.rows][this.cols];
+            for (int r = 0; r < this.rows; r++) {
+                for (int c = 0; c < this.cols; c++) {
+                    int tile = this.key.tiles[HEADER + canonicalIndex(r, c)];
+                    grid[r][c] = this.found[canonicalIndex(r, c)] ? LasersModel.LASER : (char) tile;
+                }
+            }
+            return Optional.of(new LasersModel(grid));
+        }
+
+        /**
+         * Stores the solution of the safe looked up.
+         *
+         * @param solution the solution, or empty if the safe has none
+         */
+        public void store(Optional<LasersModel> solution) {
+            boolean[] lasers = UNSOLVABLE;
+            if (solution.isPresent()) {
+                lasers = new boolean[this.rows * this.cols];
+                for (int r = 0; r < this.rows; r++) {
+                    for (int c = 0; c < this.cols; c++) {
+                        lasers[canonicalIndex(r, c)] =
+                                solution.get().getblock(r, c).getCharToDisplay() == LasersModel.LASER;
+                    }
+                }
+            }
+            this.found = lasers;
+            put(this.key, lasers);
+        }
+
+        /**
+         * The row-major index in the canonical orientation of a tile of the safe looked up
+         */
+        private int canonicalIndex(int r, int c) {
+            int[] rc = transform(this.symmetry, r, c, this.rows, this.cols);
+            int canonicalCols = (this.symmetry & 1) == 1 ? this.rows : this.cols;
+            return rc[0] * canonicalCols + rc[1];
+        }
+
+        /**
+         * The tiles turned by one of the 8 symmetries, after the two dimensions in two bytes each
+         */
+        private byte[] orient(char[] tiles, int s) {
+            boolean swapped = (s & 1) == 1;
+            int newRows = swapped ? this.cols : this.rows;
+            int newCols = swapped ? this.rows : this.cols;
+            byte[] form = new byte[HEADER + tiles.length];
+            form[0] = (byte) (newRows >> 8);
+            form[1] = (byte) newRows;
+            form[2] = (byte) (newCols >> 8);
+            form[3] = (byte) newCols;
+            for (int r = 0; r < this.rows; r++) {
+                for (int c = 0; c < this.cols; c++) {
+                    int[] rc = transform(s, r, c, this.rows, this.cols);
+                    form[HEADER + rc[0] * newCols + rc[1]] = (byte) tiles[r * this.cols + c];
+                }
+            }
+            return form;
+        }
+    }
+
+    /**
+     * Where one of the 8 symmetries of a rows x cols safe moves a tile. The odd
+     * symmetries swap the rows and columns.
+     *
+     * @return the new row and column
+     */
+    private static int[] transform(int s, int r, int c, int rows, int cols) {
+        switch (s) {
+            case 0: return new int[]{r, c};                            //as it is
+            case 1: return new int[]{c, rows - 1 - r};                 //quarter turn
+            case 2: return new int[]{rows - 1 - r, cols - 1 - c};      //half turn
+            case 3: return new int[]{cols - 1 - c, r};                 //three quarter turn
+            case 4: return new int[]{r, cols - 1 - c};                 //mirrored left to right
+            case 5: return new int[]{c, r};                            //mirrored along the diagonal
+            case 6: return new int[]{rows - 1 - r, c};                 //mirrored top to bottom
+            default: return new int[]{cols - 1 - c, rows - 1 - r};     //mirrored along the other diagonal
+        }
+    }
+
+    /**
+     * Compares two forms byte by byte
+     */
+    private static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i] != b[i]) {
+                return Byte.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * The canonical form of a safe, as a key
+     */
+    private static final class Key {
+        private final byte[] tiles;
+        private final int hash;
+
+        private Key(byte[] tiles) {
+            this.tiles = tiles;
+            this.hash = Arrays.hashCode(tiles);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(this.tiles, ((Key) other).tiles);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the solutions of a safe, rather than stopping at the first one.
+ * With a cap of 2 it tells whether a safe has exactly one solution, which is
+ * what a safe author wants to know, and stops as soon as a second is found.
+ *
+ * Like the ParallelBacktracker, the top of the tree down to the split depth is
+ * handed out as one task per valid successor, and each task below it counts
+ * its subtree in place. The counts of subtrees are kept in a table shared by
+ * every task, keyed by the state's signature, so a state reached again by a
+ * different set of lasers is not counted again. The table holds a bounded
+ * number of subtrees; once it is full, further subtrees are counted but not kept.
+ *
+ * Below the split depth the count keeps its path on a stack of frames, as
+ * Backtracker.solveIterative does, so a safe whose search runs thousands of
+ * moves deep does not overflow the thread's stack.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SolutionCounter {
+
+    /** The default number of subtree counts kept */
+    public static final int DEFAULT_TABLE_SIZE = 1 << 18;
+
+    /** the frames countInPlace starts with; it doubles them when it goes deeper */
+    private static final int INITIAL_FRAMES = 1024;
+
+    /** the number of worker threads */
+    private final int workers;
+
+    /** how many levels of the tree are split into tasks */
+    private final int splitDepth;
+
+    /** the most subtree counts to keep */
+    private final int tableSize;
+
+    /** Where to count the configurations looked at. May be null */
+    private SolverStats stats;
+
+    /**
+     * Initialize a new counter.
+     *
+     * @param workers    the number of worker threads, at least 1
+     * @param splitDepth the number of levels of the tree to split into tasks
+     * @param tableSize  the most subtree counts to keep, 0 for none
+     */
+    public SolutionCounter(int workers, int splitDepth, int tableSize) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1: " + workers);
+        }
+        if (splitDepth < 0) {
+            throw new IllegalArgumentException("splitDepth must not be negative: " + splitDepth);
+        }
+        if (tableSize < 0) {
+            throw new IllegalArgumentException("tableSize must not be negative: " + tableSize);
+        }
+        this.workers = workers;
+        this.splitDepth = splitDepth;
+        this.tableSize = tableSize;
+    }
+
+    /**
+     * Initialize a new counter with one worker per processor, the default
+     * split depth, and the default table size.
+     */
+    public SolutionCounter() {
+        this(Runtime.getRuntime().availableProcessors(), ParallelBacktracker.DEFAULT_SPLIT_DEPTH,
+                DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Sets where the configurations looked at are counted
+     *
+     * @param stats the stats to count into, or null to stop counting
+     */
+    public void setStats(SolverStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * getter function for the number of worker threads
+     */
+    public int getWorkers() { return this.workers; }
+
+    /**
+     * Counts the solutions of a safe.
+     *
+     * @param config the safe; it is copied, not searched
+     * @param cap    stop once this many solutions are found, or 0 to count them all
+     * @return the number of solutions, or the cap if there are at least that many
+     */
+    public long count(SafeConfig config, long cap) {
+        if (cap < 0) {
+            throw new IllegalArgumentException("cap must not be negative: " + cap);
+        }
+        Count count = new Count(cap);
+        ForkJoinPool pool = new ForkJoinPool(this.workers);
+        try {
+            long total = pool.invoke(new CountTask(new SafeConfig(config), 0, count));
+            return count.enough ? cap : total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Does a safe have exactly one solution?
+     *
+     * @param config the safe; it is copied, not searched
+     * @return true if it has one solution, false if it has none or more than one
+     */
+    public boolean isUnique(SafeConfig config) {
+        return count(config, 2) == 1;
+    }
+
+    /**
+     * What one count shares between its tasks
+     */
+    private class Count {
+        private final long cap;
+        private final ConcurrentHashMap<Signature, Long> table = new ConcurrentHashMap<>();
+        //solutions found so far, each counted once, and whether they reached the cap
+        private final AtomicLong found = new AtomicLong();
+        private volatile boolean enough;
+
+        private Count(long cap) {
+            this.cap = cap;
+        }
+
+        /**
+         * Records solutions found, stopping every task once the cap is reached
+         */
+        private void found(long solutions) {
+            if (this.cap > 0 && this.found.addAndGet(solutions) >= this.cap) {
+                this.enough = true;
+            }
+        }
+
+        /**
+         * A count capped by the cap
+         */
+        private long capped(long solutions) {
+            return this.cap > 0 ? Math.min(solutions, this.cap) : solutions;
+        }
+
+        /**
+         * Keeps the count of a finished subtree, if there is room
+         */
+        private void keep(Signature signature, long solutions) {
+            if (tableSize > 0 && this.table.size() < tableSize) {
+                this.table.put(signature, solutions);
+            }
+        }
+    }
+
+    /**
+     * The count of one subtree
+     */
+    private class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final SafeConfig config;
+        private final int depth;
+        private final Count count;
+
+        private CountTask(SafeConfig config, int depth, Count count) {
+            this.config = config;
+            this.depth = depth;
+            this.count = count;
+        }
+
+        @Override
+        protected Long compute() {
+            //Above the split depth, every valid successor becomes a task that can be stolen
+            if (this.depth < splitDepth) {
+                if (this.count.enough) {
+                    return 0L;
+                }
+                if (stats != null) {
+                    stats.nodeExpanded();
+                }
+                if (this.config.isGoal()) {
+                    this.count.found(1);
+                    return 1L;
+                }
+                List<CountTask> tasks = new ArrayList<>();
+                for (Configuration child : this.config.getSuccessors()) {
+                    if (child.isValid()) {
+                        tasks.add(new CountTask((SafeConfig) child, this.depth + 1, this.count));
+                    }
+                }
+                long total = 0;
+                for (CountTask task : invokeAll(tasks)) {
+                    total += task.join();
+                }
+                return this.count.capped(total);
+            }
+            return countInPlace();
+        }
+
+        /**
+         * The sequential count below the split depth, moving the one configuration
+         * of this task and undoing the moves again. The path is kept on a stack of
+         * frames rather than the thread's stack: per frame the next move to try,
+         * the number of moves, the solutions counted so far, and the signature its
+         * count is kept under once every move has been tried.
+         *
+         * @return the solutions below the configuration, capped
+         */
+        private long countInPlace() {
+            int[] nextMove = new int[INITIAL_FRAMES];
+            int[] moveCount = new int[INITIAL_FRAMES];
+            long[] totals = new long[INITIAL_FRAMES];
+            Signature[] signatures = new Signature[INITIAL_FRAMES];
+            int top = -1;
+            boolean entering = true;
+            while (true) {
+                long solutions;
+                if (entering) {
+                    //A configuration just moved to: settle it at once, from the table if it is there,
+                    //or push a frame to search below it
+                    entering = false;
+                    solutions = settle();
+                    Signature signature = null;
+                    if (solutions < 0) {
+                        signature = new Signature(this.config.getState().signature());
+                        Long known = this.count.table.get(signature);
+                        if (known != null) {
+                            this.count.found(known);
+                            solutions = known;
+                        }
+                    }
+                    if (solutions < 0) {
+                        top++;
+                        if (top == nextMove.length) {
+                            nextMove = Arrays.copyOf(nextMove, 2 * top);
+                            moveCount = Arrays.copyOf(moveCount, 2 * top);
+                            totals = Arrays.copyOf(totals, 2 * top);
+                            signatures = Arrays.copyOf(signatures, 2 * top);
+                        }
+                        nextMove[top] = 0;
+                        moveCount[top] = this.config.getMoveCount();
+                        totals[top] = 0;
+                        signatures[top] = signature;
+                        continue;
+                    }
+                } else if (nextMove[top] < moveCount[top] && !this.count.enough
+                        && !(this.count.cap > 0 && totals[top] >= this.count.cap)) {
+                    if (this.config.makeMove(nextMove[top]++)) {
+                        entering = true;
+                    } else {
+                        this.config.undoMove();
+                    }
+                    continue;
+                } else {
+                    //Every move of the frame is tried
+                    solutions = this.count.capped(totals[top]);
+                    //A subtree cut short because the cap was reached elsewhere is not a true count
+                    if (!this.count.enough) {
+                        this.count.keep(signatures[top], solutions);
+                    }
+                    signatures[top--] = null;
+                }
+                //Hand the count back to the frame below, undoing the move that left it
+                if (top < 0) {
+                    return solutions;
+                }
+                this.config.undoMove();
+                totals[top] += solutions;
+            }
+        }
+
+        /**
+         * Settles the configuration just moved to without searching below it, if
+         * it can be: the count has enough solutions, or it is a goal.
+         *
+         * @return its solutions, or -1 if it has to be searched below
+         */
+        private long settle() {
+            if (this.count.enough) {
+                return 0;
+            }
+            if (stats != null) {
+                stats.nodeExpanded();
+            }
+            if (this.config.isGoal()) {
+                this.count.found(1);
+                return 1;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The signature of a state, as a key of the table
+     */
+    private static final class Signature {
+        private final long[] bits;
+        private final int hash;
+
+        private Signature(long[] bits) {
+            this.bits = bits;
+            this.hash = Arrays.hashCode(bits);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Signature && Arrays.equals(this.bits, ((Signature) other).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
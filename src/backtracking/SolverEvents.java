@@ -0,0 +1,161 @@
+package backtracking;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder events of the solver, so a recording shows when a safe
+ * was presolved and searched next to the GC and CPU events around it.
+ *
+ * Loading the first event class starts up the recorder's machinery, which takes
+ * a good part of a second, so no event is created until the recorder has been
+ * started, by -XX:StartFlightRecording or jcmd. Until then beginPresolve and
+ * beginSearch return null and the end methods do nothing. Once it is started,
+ * an event only records its fields when a recording asks for it.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+final class SolverEvents {
+
+    private SolverEvents() {
+    }
+
+    /**
+     * The lasers placed and spots ruled out before a search
+     */
+    @Name("backtracking.Presolve")
+    @Label("Presolve")
+    @Category("Safe Solver")
+    @Description("Lasers placed and spots ruled out before searching")
+    static final class Presolve extends Event {
+        @Label("Lasers Placed")
+        int placed;
+
+        @Label("Spots Ruled Out")
+        int ruledOut;
+
+        @Label("Consistent")
+        boolean consistent;
+    }
+
+    /**
+     * One search for a solution
+     */
+    @Name("backtracking.Search")
+    @Label("Search")
+    @Category("Safe Solver")
+    @Description("A search for a solution to a safe")
+    static final class Search extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Nodes Expanded")
+        long nodes;
+
+        @Label("Max Depth")
+        long maxDepth;
+
+        @Label("Solved")
+        boolean solved;
+
+        @Label("Stopped")
+        boolean stopped;
+    }
+
+    /**
+     * Has the Flight Recorder been started, so that events can be recorded?
+     */
+    static boolean isRecording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Loads the event classes now, if the recorder has been started, so that
+     * loading them is not counted in the time of the first presolve or search
+     */
+    static void prepare() {
+        if (isRecording()) {
+            EventType.getEventType(Presolve.class);
+            EventType.getEventType(Search.class);
+        }
+    }
+
+    /**
+     * Starts timing a presolve
+     *
+     * @return the event, to be ended by endPresolve, or null if the recorder is not started
+     */
+    static Presolve beginPresolve() {
+        if (!isRecording()) {
+            return null;
+        }
+        Presolve event = new Presolve();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a presolve, recording it if a recording wants it
+     *
+     * @param event     the event from beginPresolve, or null
+     * @param reduction what the presolve did
+     */
+    static void endPresolve(Presolve event, Deductions.Reduction reduction) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.placed = reduction.getPlaced();
+            event.ruledOut = reduction.getRuledOut();
+            event.consistent = reduction.isConsistent();
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing a search
+     *
+     * @param engine the name of the engine searching
+     * @return the event, to be ended by endSearch, or null if the recorder is not started
+     */
+    static Search beginSearch(String engine) {
+        if (!isRecording()) {
+            return null;
+        }
+        Search event = new Search();
+        event.engine = engine;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a search, recording it if a recording wants it
+     *
+     * @param event   the event from beginSearch, or null
+     * @param stats   the counters of the search, or null if none were kept
+     * @param solved  was a solution found?
+     * @param stopped did the search give up before it was done?
+     */
+    static void endSearch(Search event, SolverStats stats, boolean solved, boolean stopped) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            if (stats != null) {
+                event.nodes = stats.getNodes();
+                event.maxDepth = stats.getMaxDepth();
+            }
+            event.solved = solved;
+            event.stopped = stopped;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package backtracking;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept by a search, for working out why it was fast or slow.
+ * One SolverStats can be shared by every configuration and thread of a
+ * search, since the counters are safe to update concurrently.
+ *
+ * A search with no SolverStats set skips all of this, so the counters
+ * cost nothing unless they are asked for.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SolverStats {
+
+    /** the depths are counted in buckets of powers of two: 0, 1, 2-3, 4-7, and so on */
+    private static final int DEPTH_BUCKETS = 32;
+
+    /** configurations the backtracker looked at */
+    private final LongAdder nodes = new LongAdder();
+
+    /** successors thrown away because a numbered pillar could no longer be satisfied */
+    private final LongAdder pillarPrunes = new LongAdder();
+
+    /** successors thrown away because some cell could no longer be lit */
+    private final LongAdder coveragePrunes = new LongAdder();
+
+    /** successors made, and those thrown away for a laser on a lit spot or for failing isValid */
+    private final LongAdder successors = new LongAdder();
+    private final LongAdder litRejects = new LongAdder();
+    private final LongAdder validRejects = new LongAdder();
+
+    /** configurations copied */
+    private final LongAdder copies = new LongAdder();
+
+    /** time spent checking whether configurations are solved */
+    private final LongAdder verifyNanos = new LongAdder();
+
+    /** the configurations looked at by depth, and the deepest one */
+    private final LongAdder[] depths = new LongAdder[DEPTH_BUCKETS];
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Initialize new counters, all zero
+     */
+    public SolverStats() {
+        for (int i = 0; i < DEPTH_BUCKETS; i++) {
+            this.depths[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record that a configuration was looked at
+     */
+    public void nodeExpanded() { this.nodes.increment(); }
+
+    /**
+     * Record that a configuration was looked at, and how deep in the tree it is
+     *
+     * @param depth the number of moves from the starting configuration
+     */
+    public void nodeExpanded(int depth) {
+        this.nodes.increment();
+        this.depths[bucket(depth)].increment();
+        this.maxDepth.accumulate(depth);
+    }
+
+    /**
+     * Record that a number of configurations were looked at
+     */
+    public void nodesExpanded(long count) { this.nodes.add(count); }
+
+    /**
+     * Record a successor pruned by a numbered pillar
+     */
+    public void pillarPruned() { this.pillarPrunes.increment(); }
+
+    /**
+     * Record a successor pruned by a cell that can no longer be lit
+     */
+    public void coveragePruned() { this.coveragePrunes.increment(); }
+
+    /**
+     * Record a successor made
+     */
+    public void successorGenerated() { this.successors.increment(); }
+
+    /**
+     * Record a successor thrown away because its laser would be on a lit or ruled out spot
+     */
+    public void litRejected() { this.litRejects.increment(); }
+
+    /**
+     * Record a successor thrown away by isValid
+     */
+    public void validRejected() { this.validRejects.increment(); }
+
+    /**
+     * Record a configuration copied
+     */
+    public void configCopied() { this.copies.increment(); }
+
+    /**
+     * Record time spent checking whether a configuration is solved
+     */
+    public void verifyTime(long nanos) { this.verifyNanos.add(nanos); }
+
+    /**
+     * getter function for the number of configurations looked at
+     */
+    public long getNodes() { return this.nodes.sum(); }
+
+    /**
+     * getter function for the number of successors pruned by numbered pillars
+     */
+    public long getPillarPrunes() { return this.pillarPrunes.sum(); }
+
+    /**
+     * getter function for the number of successors pruned by unlightable cells
+     */
+    public long getCoveragePrunes() { return this.coveragePrunes.sum(); }
+
+    /**
+     * getter function for the number of successors made
+     */
+    public long getSuccessors() { return this.successors.sum(); }
+
+    /**
+     * getter function for the number of successors thrown away for a laser on a lit spot
+     */
+    public long getLitRejects() { return this.litRejects.sum(); }
+
+    /**
+     * getter function for the number of successors thrown away by isValid
+     */
+    public long getValidRejects() { return this.validRejects.sum(); }
+
+    /**
+     * getter function for the number of configurations copied
+     */
+    public long getCopies() { return this.copies.sum(); }
+
+    /**
+     * getter function for the nanoseconds spent checking whether configurations are solved
+     */
+    public long getVerifyNanos() { return this.verifyNanos.sum(); }
+
+    /**
+     * getter function for the depth of the deepest configuration looked at, of the
+     * searches that report depths
+     */
+    public long getMaxDepth() { return this.maxDepth.get(); }
+
+    /**
+     * The configurations looked at by depth, of the searches that report depths.
+     *
+     * @return per bucket, the configurations with a depth from 2^(i-1) up to 2^i - 1;
+     *         bucket 0 holds depth 0. Trailing empty buckets are left off.
+     */
+    public long[] getDepthHistogram() {
+        int used = 0;
+        long[] histogram = new long[DEPTH_BUCKETS];
+        for (int i = 0; i < DEPTH_BUCKETS; i++) {
+            histogram[i] = this.depths[i].sum();
+            if (histogram[i] > 0) {
+                used = i + 1;
+            }
+        }
+        long[] trimmed = new long[used];
+        System.arraycopy(histogram, 0, trimmed, 0, used);
+        return trimmed;
+    }
+
+    /**
+     * The bucket of a depth
+     */
+    private static int bucket(int depth) {
+        return Math.min(DEPTH_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(depth));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder histogram = new StringBuilder();
+        long[] buckets = getDepthHistogram();
+        for (int i = 0; i < buckets.length; i++) {
+            int low = i == 0 ? 0 : 1 << (i - 1);
+            int high = i == 0 ? 0 : (1 << i) - 1;
+            histogram.append("\n  depth ").append(low == high ? String.valueOf(low) : low + "-" + high)
+                    .append(": ").append(buckets[i]);
+        }
+        return "Nodes expanded: " + getNodes() + "\n" +
+                "Pruned by pillars: " + getPillarPrunes() + "\n" +
+                "Pruned by coverage: " + getCoveragePrunes() + "\n" +
+                "Successors generated: " + getSuccessors() + "\n" +
+                "Rejected on lit spots: " + getLitRejects() + "\n" +
+                "Rejected by isValid: " + getValidRejects() + "\n" +
+                "Configurations copied: " + getCopies() + "\n" +
+                "Time verifying: " + getVerifyNanos() / 1_000_000.0 + " ms\n" +
+                "Max depth: " + getMaxDepth() +
+                (buckets.length > 0 ? "\nDepth histogram:" + histogram : "");
+    }
+}
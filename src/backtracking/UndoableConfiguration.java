@@ -0,0 +1,34 @@
+package backtracking;
+
+/**
+ * A configuration that can be searched in place. Rather than handing out
+ * new successor configurations, it applies a move to itself, remembers
+ * how to take it back on an undo trail, and rolls it back when the
+ * backtracker backs out of that branch.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public interface UndoableConfiguration extends Configuration {
+    /**
+     * Get the number of moves that can be made from the current configuration.
+     * Each move corresponds to one successor of getSuccessors().
+     *
+     * @return the number of moves
+     */
+    public int getMoveCount();
+
+    /**
+     * Apply a move to this configuration and record it on the undo trail.
+     * The move must be undone with undoMove() whether it was valid or not.
+     *
+     * @param move which move to make, from 0 to getMoveCount() - 1
+     * @return true if the configuration is valid after the move; false otherwise
+     */
+    public boolean makeMove(int move);
+
+    /**
+     * Roll back the most recent move that has not been undone yet.
+     */
+    public void undoMove();
+}
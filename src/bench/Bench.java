@@ -0,0 +1,227 @@
+package bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A small benchmark harness. Every benchmark is run for a warmup period, so
+ * the JIT has compiled it, and then measured over several timed iterations.
+ * For each benchmark it reports the time per operation, the bytes allocated
+ * per operation and the allocation rate, and the garbage collections during
+ * the measurement, so regressions in speed or garbage show up between releases.
+ *
+ * Allocations are read from the HotSpot per-thread allocation counter. On
+ * a JVM without it the allocation columns are reported as -1.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class Bench {
+
+    /** One benchmarked operation. The result is consumed so the JIT cannot drop the work */
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    /** The measurements of one benchmark */
+    public static class Result {
+        private final String name;
+        private final long ops;
+        private final double nsPerOp;
+        private final double nsError;
+        private final double bytesPerOp;
+        private final double mbPerSec;
+        private final long gcCount;
+        private final long gcMillis;
+
+        private Result(String name, long ops, double nsPerOp, double nsError, double bytesPerOp,
+                       double mbPerSec, long gcCount, long gcMillis) {
+            this.name = name;
+            this.ops = ops;
+            this.nsPerOp = nsPerOp;
+            this.nsError = nsError;
+            this.bytesPerOp = bytesPerOp;
+            this.mbPerSec = mbPerSec;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        /**
+         * getter function for the name of the benchmark
+         */
+        public String getName() { return this.name; }
+
+        /**
+         * getter function for the mean time of one operation, in nanoseconds
+         */
+        public double getNsPerOp() { return this.nsPerOp; }
+
+        /**
+         * getter function for the mean bytes allocated by one operation
+         */
+        public double getBytesPerOp() { return this.bytesPerOp; }
+
+        /**
+         * A row of the result table
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-40s %12d %14.1f %10.1f %14.1f %10.1f %6d %8d",
+                    this.name, this.ops, this.nsPerOp, this.nsError, this.bytesPerOp, this.mbPerSec,
+                    this.gcCount, this.gcMillis);
+        }
+
+        /**
+         * A comma separated line of the result, in the order of CSV_HEADER
+         */
+        public String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%.1f,%.1f,%.1f,%.1f,%d,%d",
+                    this.name, this.ops, this.nsPerOp, this.nsError, this.bytesPerOp, this.mbPerSec,
+                    this.gcCount, this.gcMillis);
+        }
+    }
+
+    /** The heading of the result table */
+    public static final String HEADER = String.format(Locale.ROOT, "%-40s %12s %14s %10s %14s %10s %6s %8s",
+            "Benchmark", "Ops", "ns/op", "+-", "B/op", "MB/s", "GCs", "GC ms");
+
+    /** The heading of a CSV file of results */
+    public static final String CSV_HEADER = "benchmark,ops,ns_per_op,ns_error,bytes_per_op,mb_per_sec,gc_count,gc_ms";
+
+    /** How long to warm up and to measure each iteration, in milliseconds */
+    private final long warmupMillis;
+    private final long iterationMillis;
+    private final int iterations;
+
+    /** The allocation counter, or null if this JVM does not have one */
+    private final com.sun.management.ThreadMXBean allocations;
+
+    /** Written to with every result so no operation is dead code */
+    private volatile int sink;
+
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * Initialize a new harness.
+     *
+     * @param warmupMillis    how long to run each benchmark before measuring it
+     * @param iterationMillis how long each measured iteration lasts
+     * @param iterations      the number of measured iterations, at least 1
+     */
+    public Bench(long warmupMillis, long iterationMillis, int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be at least 1: " + iterations);
+        }
+        this.warmupMillis = warmupMillis;
+        this.iterationMillis = iterationMillis;
+        this.iterations = iterations;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            this.allocations = (com.sun.management.ThreadMXBean) threads;
+            this.allocations.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.allocations = null;
+        }
+    }
+
+    /**
+     * Warms up and measures one benchmark, and prints its result.
+     *
+     * @param name the name of the benchmark
+     * @param op   the operation to measure
+     * @return the measurements
+     * @throws Exception if the operation fails
+     */
+    public Result run(String name, Operation op) throws Exception {
+        runFor(op, this.warmupMillis * 1_000_000L);
+
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long bytesBefore = allocatedBytes();
+        long totalOps = 0;
+        long totalNanos = 0;
+        double[] perOp = new double[this.iterations];
+        for (int i = 0; i < this.iterations; i++) {
+            long start = System.nanoTime();
+            long ops = runFor(op, this.iterationMillis * 1_000_000L);
+            long elapsed = System.nanoTime() - start;
+            perOp[i] = (double) elapsed / ops;
+            totalOps += ops;
+            totalNanos += elapsed;
+        }
+        long bytes = allocatedBytes() - bytesBefore;
+
+        //the error is the standard deviation of the iterations
+        double mean = (double) totalNanos / totalOps;
+        double variance = 0;
+        for (double t : perOp) {
+            variance += (t - mean) * (t - mean);
+        }
+        double error = this.iterations > 1 ? Math.sqrt(variance / (this.iterations - 1)) : 0;
+        double bytesPerOp = this.allocations == null ? -1 : (double) bytes / totalOps;
+        double mbPerSec = this.allocations == null ? -1 : bytes / (totalNanos / 1e9) / (1024 * 1024);
+
+        Result result = new Result(name, totalOps, mean, error, bytesPerOp, mbPerSec,
+                gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+        this.results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * getter function for the results of every benchmark run so far
+     */
+    public List<Result> getResults() { return this.results; }
+
+    /**
+     * Runs an operation over and over until the time is up.
+     *
+     * @return the number of times it ran
+     */
+    private long runFor(Operation op, long nanos) throws Exception {
+        long ops = 0;
+        long end = System.nanoTime() + nanos;
+        int hash = 0;
+        do {
+            Object result = op.run();
+            hash += result == null ? 0 : System.identityHashCode(result);
+            ops++;
+        } while (System.nanoTime() < end);
+        this.sink = hash;
+        return ops;
+    }
+
+    /**
+     * The bytes allocated by this thread so far, or 0 if they are not counted
+     */
+    private long allocatedBytes() {
+        return this.allocations == null ? 0 : this.allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * The number of garbage collections so far, over every collector
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * The time spent collecting garbage so far, over every collector
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,192 @@
+package bench;
+
+import backtracking.Backtracker;
+import backtracking.Configuration;
+import backtracking.SafeConfig;
+import backtracking.SolverStats;
+import model.LasersModel;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The benchmarks of the model and solver hot paths. For every safe it measures
+ * adding and removing a laser, verifying the solved safe, the laser and pillar
+ * checks, copying the solved safe, generating the first successors, and
+ * solving the safe from scratch with the backtracker, once branching in
+ * row-major order and once branching on the most constrained spot (MRV). The
+ * nodes each branching expands are printed alongside.
+ *
+ * Usage: java bench.SafeBenchmarks [-warmup ms] [-time ms] [-iterations n] [-csv results.csv] [safe files...]
+ *
+ * With no safe files the puzzles in tests/ are used. With -csv the results are
+ * also written as a CSV file, to compare against the results of a later release.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SafeBenchmarks {
+    private static final String USAGE =
+            "Usage: java bench.SafeBenchmarks [-warmup ms] [-time ms] [-iterations n] [-csv results.csv] [safe files...]";
+
+    /** the puzzles benchmarked when no files are given */
+    private static final String[] DEFAULT_SAFES = {
+            "tests/4x4safe.txt", "tests/7x7safe.txt", "tests/8x8safe.txt",
+            "tests/10x8safe.txt", "tests/14x14safe.txt"
+    };
+
+    public static void main(String[] args) throws Exception {
+        long warmupMillis = 1000;
+        long iterationMillis = 1000;
+        int iterations = 5;
+        String csv = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-warmup":
+                    warmupMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-time":
+                    iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-csv":
+                    csv = args[++i];
+                    break;
+                default:
+                    if (args[i].startsWith("-")) {
+                        System.out.println("Unknown option: " + args[i]);
+                        System.out.println(USAGE);
+                        return;
+                    }
+                    files.add(args[i]);
+                    break;
+            }
+        }
+        if (files.isEmpty()) {
+            for (String file : DEFAULT_SAFES) {
+                files.add(file);
+            }
+        }
+
+        Bench bench = new Bench(warmupMillis, iterationMillis, iterations);
+        System.out.println(Bench.HEADER);
+        for (String file : files) {
+            benchmarkSafe(bench, file);
+        }
+
+        if (csv != null) {
+            try (PrintWriter out = new PrintWriter(csv)) {
+                out.println(Bench.CSV_HEADER);
+                for (Bench.Result result : bench.getResults()) {
+                    out.println(result.toCsv());
+                }
+            }
+            System.out.println("Results written to " + csv);
+        }
+    }
+
+    /**
+     * Runs every benchmark on one safe.
+     *
+     * @param bench the harness
+     * @param file  the safe file
+     */
+    private static void benchmarkSafe(Bench bench, String file) throws Exception {
+        String name = file.substring(file.lastIndexOf('/') + 1).replace(".txt", "");
+        LasersModel empty;
+        try {
+            empty = new LasersModel(file);
+        } catch (FileNotFoundException fnfe) {
+            System.out.println(fnfe.getMessage());
+            return;
+        }
+        Optional<Configuration> sol = new Backtracker(false).solve(new SafeConfig(empty));
+        if (!sol.isPresent()) {
+            System.out.println(name + " has no solution, skipped");
+            return;
+        }
+        LasersModel solved = ((SafeConfig) sol.get()).getSafe();
+
+        //the first spot a laser can be added to in the empty safe
+        int spotRow = -1;
+        int spotCol = -1;
+        for (int r = 0; r < empty.getRows() && spotRow < 0; r++) {
+            for (int c = 0; c < empty.getCols(); c++) {
+                if (empty.getblock(r, c).getCharToDisplay() == LasersModel.EMPTY) {
+                    spotRow = r;
+                    spotCol = c;
+                    break;
+                }
+            }
+        }
+        final int row = spotRow;
+        final int col = spotCol;
+
+        bench.run(name + " add/remove", () -> {
+            empty.add(row, col);
+            return empty.remove(row, col);
+        });
+        bench.run(name + " add/remove quietly", () -> {
+            empty.addQuietly(row, col);
+            return empty.removeQuietly(row, col);
+        });
+        bench.run(name + " verify", solved::verify);
+        bench.run(name + " verify quietly", solved::isVerified);
+        bench.run(name + " checkLaserValidity", () -> {
+            int valid = 0;
+            for (int r = 0; r < solved.getRows(); r++) {
+                for (int c = 0; c < solved.getCols(); c++) {
+                    if (solved.getblock(r, c).getCharToDisplay() == LasersModel.LASER
+                            && solved.checkLaserValidity(r, c)) {
+                        valid++;
+                    }
+                }
+            }
+            return valid;
+        });
+        bench.run(name + " checkPillarValidity", () -> {
+            int valid = 0;
+            for (int r = 0; r < solved.getRows(); r++) {
+                for (int c = 0; c < solved.getCols(); c++) {
+                    char blockChar = solved.getblock(r, c).getCharToDisplay();
+                    if (Character.isDigit(blockChar)
+                            && solved.checkPillarValidity(r, c, Character.getNumericValue(blockChar))) {
+                        valid++;
+                    }
+                }
+            }
+            return valid;
+        });
+        bench.run(name + " copy", () -> new LasersModel(solved));
+        SafeConfig init = new SafeConfig(empty);
+        bench.run(name + " getSuccessors", init::getSuccessors);
+        Backtracker bt = new Backtracker(false);
+        bench.run(name + " solve", () -> bt.solve(new SafeConfig(init)));
+        SafeConfig mrvInit = new SafeConfig(empty);
+        mrvInit.setBranching(SafeConfig.Branching.MRV);
+        bench.run(name + " solve mrv", () -> bt.solve(new SafeConfig(mrvInit)));
+        System.out.println(name + " nodes: row-major " + countNodes(init) + ", mrv " + countNodes(mrvInit));
+    }
+
+    /**
+     * The nodes the backtracker expands solving a safe
+     *
+     * @param init the safe, which is copied rather than searched
+     * @return the number of nodes
+     */
+    private static long countNodes(SafeConfig init) {
+        SafeConfig config = new SafeConfig(init);
+        SolverStats stats = new SolverStats();
+        config.setStats(stats);
+        Backtracker bt = new Backtracker(false);
+        bt.setStats(stats);
+        bt.solve(config);
+        return stats.getNodes();
+    }
+}
@@ -0,0 +1,121 @@
+package generator;
+
+import model.LasersModel;
+import model.SafeRenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * This is the main class for the safe generator. It makes a number of safes
+ * from a seed and prints them, or writes each to its own safe file.
+ *
+ * Options may follow the seed:
+ *     -count N      make N safes
+ *     -density D    the chance of each tile being a pillar
+ *     -digits P     the chance of a pillar being numbered, either one chance or
+ *                   five separated by commas, one for each count of lasers 0 to 4
+ *     -unique       make every safe have exactly one solution
+ *     -solution     add the solution after each safe, like the files in tests/
+ *     -out DIR      write safe i to DIR/RxC-seed-i.txt instead of printing it
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class GenerateSafes {
+    private static final String USAGE =
+            "Usage: java generator.GenerateSafes rows cols seed [-count N] [-density D] [-digits P|P0,P1,P2,P3,P4]"
+                    + " [-unique] [-solution] [-out DIR]";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println(USAGE);
+            return;
+        }
+        int rows = Integer.parseInt(args[0]);
+        int cols = Integer.parseInt(args[1]);
+        long seed = Long.parseLong(args[2]);
+        SafeGenerator generator = new SafeGenerator(rows, cols, seed);
+
+        // read the options after the seed
+        int count = 1;
+        boolean withSolution = false;
+        File outDir = null;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "-count":
+                    count = Integer.parseInt(args[++i]);
+                    break;
+                case "-density":
+                    generator.setPillarDensity(Double.parseDouble(args[++i]));
+                    break;
+                case "-digits":
+                    String[] parts = args[++i].split(",");
+                    double[] chance = new double[parts.length];
+                    for (int k = 0; k < parts.length; k++) {
+                        chance[k] = Double.parseDouble(parts[k]);
+                    }
+                    generator.setDigitChance(chance);
+                    break;
+                case "-unique":
+                    generator.setUnique(true);
+                    break;
+                case "-solution":
+                    withSolution = true;
+                    break;
+                case "-out":
+                    outDir = new File(args[++i]);
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    System.out.println(USAGE);
+                    return;
+            }
+        }
+        if (outDir != null && !outDir.isDirectory() && !outDir.mkdirs()) {
+            System.out.println("Could not make directory " + outDir);
+            return;
+        }
+
+        // start the clock
+        double start = System.currentTimeMillis();
+
+        PrintWriter stdout = new PrintWriter(System.out);
+        for (int i = 0; i < count; i++) {
+            LasersModel safe = generator.generate();
+            if (outDir == null) {
+                if (i > 0) {
+                    stdout.println();
+                }
+                writeSafe(generator, safe, withSolution, stdout);
+            } else {
+                File file = new File(outDir, rows + "x" + cols + "-" + seed + "-" + i + ".txt");
+                try (PrintWriter out = new PrintWriter(file)) {
+                    writeSafe(generator, safe, withSolution, out);
+                }
+            }
+        }
+        stdout.flush();
+
+        // compute the elapsed time
+        if (outDir != null) {
+            System.out.println("Generated " + count + " safes in " +
+                    (System.currentTimeMillis() - start)/1000.0 + " seconds.");
+        }
+    }
+
+    /**
+     * Writes a safe, and its solution if asked for
+     */
+    private static void writeSafe(SafeGenerator generator, LasersModel safe, boolean withSolution,
+                                  PrintWriter out) throws IOException {
+        SafeGenerator.write(safe, out);
+        if (withSolution) {
+            out.println();
+            out.println("A " + safe.getRows() + "x" + safe.getCols() + " puzzle with a solution:");
+            out.println();
+            new SafeRenderer().render(generator.getSolution(), out);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package generator;
+
+import backtracking.Configuration;
+import backtracking.SafeConfig;
+import backtracking.SatEngine;
+import model.LasersModel;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+/**
+ * Generates safes of any size. Pillars are scattered at random, then lasers
+ * are put into unlit tiles in a random order until every tile is lit, which
+ * is always a valid solution since a laser in an unlit tile cannot see any
+ * other laser. Some pillars are then numbered with the count of lasers next
+ * to them in that solution, so every safe made has at least one solution.
+ *
+ * Every safe is decided by the seed, so the same settings and seed always
+ * give the same sequence of safes.
+ *
+ * If asked for, each safe is made to have exactly one solution. While the SAT
+ * engine can find a second solution, the pillars next to tiles where the two
+ * differ are numbered, or else tiles where they differ are made into numbered
+ * pillars and the safe is lit again. Every step adds a pillar or a number,
+ * so this always ends.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SafeGenerator {
+
+    /** The default chance of a tile being a pillar */
+    public static final double DEFAULT_PILLAR_DENSITY = 0.2;
+
+    /** The default chance of a pillar being numbered */
+    public static final double DEFAULT_DIGIT_CHANCE = 0.5;
+
+    private final int rows;
+    private final int cols;
+    private final SplittableRandom random;
+
+    private double pillarDensity = DEFAULT_PILLAR_DENSITY;
+    //The chance of a pillar being numbered, by how many lasers are next to it
+    private double[] digitChance = {
+            DEFAULT_DIGIT_CHANCE, DEFAULT_DIGIT_CHANCE, DEFAULT_DIGIT_CHANCE,
+            DEFAULT_DIGIT_CHANCE, DEFAULT_DIGIT_CHANCE
+    };
+    private boolean unique;
+
+    //The safe being made, row-major: pillars, which pillars are numbered, and the solution
+    private boolean[] pillar;
+    private boolean[] numbered;
+    private boolean[] laser;
+    private boolean[] lit;
+
+    /**
+     * Initialize a new generator.
+     *
+     * @param rows the rows of every safe, at least 1
+     * @param cols the columns of every safe, at least 1
+     * @param seed the seed the safes are made from
+     */
+    public SafeGenerator(int rows, int cols, long seed) {
+        if (rows < 1 || cols < 1) {
+            throw new IllegalArgumentException("a safe must be at least 1x1: " + rows + "x" + cols);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Sets the chance of each tile being a pillar
+     *
+     * @param density between 0 and 1
+     */
+    public void setPillarDensity(double density) {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("density must be between 0 and 1: " + density);
+        }
+        this.pillarDensity = density;
+    }
+
+    /**
+     * Sets the chance of a pillar being numbered. With one chance it is used for
+     * every pillar. With five, chance[k] is used for a pillar with k lasers next to
+     * it, which controls how often each digit shows up.
+     *
+     * @param chance one or five chances between 0 and 1
+     */
+    public void setDigitChance(double... chance) {
+        if (chance.length != 1 && chance.length != 5) {
+            throw new IllegalArgumentException("give one chance, or one for each digit 0 to 4");
+        }
+        for (double p : chance) {
+            if (p < 0 || p > 1) {
+                throw new IllegalArgumentException("chance must be between 0 and 1: " + p);
+            }
+        }
+        for (int k = 0; k < this.digitChance.length; k++) {
+            this.digitChance[k] = chance.length == 1 ? chance[0] : chance[k];
+        }
+    }
+
+    /**
+     * Sets whether every safe made must have exactly one solution
+     */
+    public void setUnique(boolean unique) {
+        this.unique = unique;
+    }
+
+    /**
+     * getter function for the number of rows of the safes made
+     */
+    public int getRows() { return this.rows; }
+
+    /**
+     * getter function for the number of columns of the safes made
+     */
+    public int getCols() { return this.cols; }
+
+    /**
+     * Makes the next safe.
+     *
+     * @return the safe, with no lasers in it
+     */
+    public LasersModel generate() {
+        int size = this.rows * this.cols;
+        this.pillar = new boolean[size];
+        this.numbered = new boolean[size];
+        this.laser = new boolean[size];
+        this.lit = new boolean[size];
+        for (int cell = 0; cell < size; cell++) {
+            this.pillar[cell] = this.random.nextDouble() < this.pillarDensity;
+        }
+        light();
+        for (int cell = 0; cell < size; cell++) {
+            if (this.pillar[cell]) {
+                this.numbered[cell] = this.random.nextDouble() < this.digitChance[adjacentLasers(cell)];
+            }
+        }
+        if (this.unique) {
+            makeUnique();
+        }
+        return new LasersModel(grid(false));
+    }
+
+    /**
+     * getter function for the solution of the last safe made
+     */
+    public LasersModel getSolution() {
+        return new LasersModel(grid(true));
+    }
+
+    /**
+     * Writes a safe in the safe file format, the dimensions followed by one line per row.
+     *
+     * @param safe the safe
+     * @param out  where to write it
+     * @throws IOException if it could not be written
+     */
+    public static void write(LasersModel safe, Appendable out) throws IOException {
+        out.append(String.valueOf(safe.getRows())).append(' ').append(String.valueOf(safe.getCols())).append('\n');
+        for (int r = 0; r < safe.getRows(); r++) {
+            for (int c = 0; c < safe.getCols(); c++) {
+                if (c > 0) {
+                    out.append(' ');
+                }
+                out.append(safe.getblock(r, c).getCharToDisplay());
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Puts lasers into the unlit tiles, in a random order, until every tile is lit.
+     * Lasers already placed are kept.
+     */
+    private void light() {
+        int size = this.rows * this.cols;
+        int[] order = new int[size];
+        for (int cell = 0; cell < size; cell++) {
+            order[cell] = cell;
+            this.lit[cell] = false;
+        }
+        for (int cell = 0; cell < size; cell++) {
+            if (this.laser[cell]) {
+                shine(cell);
+            }
+        }
+        //a Fisher-Yates shuffle
+        for (int i = size - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        for (int cell : order) {
+            //No laser can see an unlit tile, so a laser there is never in sight of another
+            if (!this.pillar[cell] && !this.lit[cell]) {
+                this.laser[cell] = true;
+                shine(cell);
+            }
+        }
+    }
+
+    /**
+     * Lights the tiles a laser can see, out to the pillars or the walls
+     */
+    private void shine(int cell) {
+        int r = cell / this.cols;
+        int c = cell % this.cols;
+        this.lit[cell] = true;
+        for (int i = c + 1; i < this.cols && !this.pillar[r * this.cols + i]; i++) {
+            this.lit[r * this.cols + i] = true;
+        }
+        for (int i = c - 1; i >= 0 && !this.pillar[r * this.cols + i]; i--) {
+            this.lit[r * this.cols + i] = true;
+        }
+        for (int i = r + 1; i < this.rows && !this.pillar[i * this.cols + c]; i++) {
+            this.lit[i * this.cols + c] = true;
+        }
+        for (int i = r - 1; i >= 0 && !this.pillar[i * this.cols + c]; i--) {
+            this.lit[i * this.cols + c] = true;
+        }
+    }
+
+    /**
+     * Adds numbers and pillars until the SAT engine cannot find a second solution.
+     */
+    private void makeUnique() {
+        SatEngine sat = new SatEngine();
+        while (true) {
+            SafeConfig puzzle = new SafeConfig(new LasersModel(grid(false)));
+            SafeConfig solution = new SafeConfig(new LasersModel(grid(true)));
+            Optional<Configuration> other = sat.solveOther(puzzle, solution);
+            if (!other.isPresent()) {
+                return;
+            }
+            boolean[] otherLaser = new boolean[this.laser.length];
+            for (int cell = 0; cell < otherLaser.length; cell++) {
+                otherLaser[cell] = ((SafeConfig) other.get()).getState()
+                        .isLaser(cell / this.cols, cell % this.cols);
+            }
+            separate(otherLaser);
+        }
+    }
+
+    /**
+     * Changes the safe so a second solution is no longer a solution, keeping the
+     * generated one. Numbering a pillar is preferred, since it keeps the layout.
+     *
+     * @param otherLaser the lasers of the second solution
+     */
+    private void separate(boolean[] otherLaser) {
+        int size = this.rows * this.cols;
+        //A pillar whose count differs between the two solutions rules the second one out.
+        //On a large safe the second solution usually differs in many places at once, and
+        //each of those places would otherwise turn up again as its own second solution
+        boolean changed = false;
+        for (int cell = 0; cell < size; cell++) {
+            if (this.pillar[cell] && !this.numbered[cell]
+                    && adjacent(cell, this.laser) != adjacent(cell, otherLaser)) {
+                this.numbered[cell] = true;
+                changed = true;
+            }
+        }
+        if (changed) {
+            return;
+        }
+        //Otherwise tiles where they differ become pillars. Lasers of only the second
+        //solution are preferred, as the generated lasers stay where they are. One is
+        //taken from each part of the safe where they differ, which is found by never
+        //taking two tiles that can see each other
+        int start = this.random.nextInt(size);
+        boolean[] seen = new boolean[size];
+        int fallback = -1;
+        changed = false;
+        for (int i = 0; i < size; i++) {
+            int cell = (start + i) % size;
+            if (otherLaser[cell] == this.laser[cell] || seen[cell]) {
+                continue;
+            }
+            if (this.laser[cell]) {
+                fallback = fallback < 0 ? cell : fallback;
+                continue;
+            }
+            markSight(cell, seen);
+            this.pillar[cell] = true;
+            this.numbered[cell] = true;
+            changed = true;
+        }
+        //The second solution only leaves out generated lasers, so one of them goes
+        if (!changed) {
+            this.pillar[fallback] = true;
+            this.numbered[fallback] = true;
+            this.laser[fallback] = false;
+        }
+        light();
+    }
+
+    /**
+     * Marks the tiles a laser at a tile could see, and the tile itself
+     */
+    private void markSight(int cell, boolean[] seen) {
+        int r = cell / this.cols;
+        int c = cell % this.cols;
+        seen[cell] = true;
+        for (int i = c + 1; i < this.cols && !this.pillar[r * this.cols + i]; i++) {
+            seen[r * this.cols + i] = true;
+        }
+        for (int i = c - 1; i >= 0 && !this.pillar[r * this.cols + i]; i--) {
+            seen[r * this.cols + i] = true;
+        }
+        for (int i = r + 1; i < this.rows && !this.pillar[i * this.cols + c]; i++) {
+            seen[i * this.cols + c] = true;
+        }
+        for (int i = r - 1; i >= 0 && !this.pillar[i * this.cols + c]; i--) {
+            seen[i * this.cols + c] = true;
+        }
+    }
+
+    /**
+     * The number of generated lasers next to a tile
+     */
+    private int adjacentLasers(int cell) {
+        return adjacent(cell, this.laser);
+    }
+
+    /**
+     * The number of tiles next to a tile that are set in a grid
+     */
+    private int adjacent(int cell, boolean[] set) {
+        int r = cell / this.cols;
+        int c = cell % this.cols;
+        int count = 0;
+        if (r + 1 < this.rows && set[cell + this.cols]) { count++; }
+        if (r - 1 >= 0 && set[cell - this.cols]) { count++; }
+        if (c + 1 < this.cols && set[cell + 1]) { count++; }
+        if (c - 1 >= 0 && set[cell - 1]) { count++; }
+        return count;
+    }
+
+    /**
+     * The characters of the safe made, with or without its solution's lasers
+     */
+    private char[][] grid(boolean withLasers) {
+        char[][] grid = new char[this.rows][this.cols];
+        for (int r = 0; r < this.rows; r++) {
+            for (int c = 0; c < this.cols; c++) {
+                int cell = r * this.cols + c;
+                if (this.numbered[cell]) {
+                    grid[r][c] = (char) ('0' + adjacentLasers(cell));
+                } else if (this.pillar[cell]) {
+                    grid[r][c] = LasersModel.PILLAR;
+                } else if (withLasers && this.laser[cell]) {
+                    grid[r][c] = LasersModel.LASER;
+                } else {
+                    grid[r][c] = LasersModel.EMPTY;
+                }
+            }
+        }
+        return grid;
+    }
+}
@@ -1,12 +1,12 @@
 package gui;
 
-import backtracking.Backtracker;
-import backtracking.Configuration;
+import backtracking.Deductions;
 import backtracking.SafeConfig;
+import backtracking.SafeState;
+import backtracking.SearchLimit;
+import backtracking.SolutionCache;
+import javafx.application.Platform;
 import javafx.scene.Node;
-import javafx.scene.control.Button;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
 import model.LasersModel;
@@ -15,8 +15,14 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * The
@@ -30,11 +36,142 @@ public class ControllerGUI {
     //instance variable for the view
     private LasersGUI gui;
 
+    //the solutions found by solve and hint, so pressing them again on the same safe is instant
+    private static final int CACHE_ENTRIES = 64;
+    private static final long CACHE_BYTES = 16 * 1024 * 1024;
+    private final SolutionCache cache = new SolutionCache(CACHE_ENTRIES, CACHE_BYTES);
+
+    /** how long a solve or hint may search by default, and how many configurations it may look at, 0 for no limit */
+    public static final long SEARCH_TIMEOUT_MILLIS = 60_000;
+    public static final long SEARCH_MAX_NODES = 0;
+    private long timeoutMillis = SEARCH_TIMEOUT_MILLIS;
+    private long maxNodes = SEARCH_MAX_NODES;
+
+    //how often a running search reports its progress to the info label
+    private static final long PROGRESS_MILLIS = 250;
+
+    //searches run on one background thread, and their progress is reported from a second one,
+    //so the window keeps responding. Both are daemons so they never keep the program running
+    private final ScheduledExecutorService searcher = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "safe-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //the limit of the search running now, null if there is none. Only used on the FX thread
+    private SearchLimit running;
+
     public ControllerGUI(LasersModel model, LasersGUI gui){
         this.model = model;
         this.gui = gui;
     }
 
+    /**
+     * Sets how long a solve or hint may search before giving up.
+     * @param timeoutMillis the time limit, or 0 for none
+     * @param maxNodes the most configurations to look at, or 0 for no limit
+     */
+    public void setSearchLimits(long timeoutMillis, long maxNodes){
+        if(timeoutMillis < 0 || maxNodes < 0){
+            throw new IllegalArgumentException("limits must not be negative: " + timeoutMillis + ", " + maxNodes);
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Is a solve or hint searching right now?
+     * @return true if a search is running
+     */
+    public boolean isSearching(){
+        return this.running != null;
+    }
+
+    /**
+     * The function for the stop button. Cancels the solve or hint searching
+     * right now, if there is one; the search stops at its next configuration.
+     */
+    public void cancel(){
+        if(this.running != null){
+            this.running.cancel();
+        }
+    }
+
+    /**
+     * Cancels the search running now, if there is one, and throws its result away.
+     */
+    private void abandon(){
+        cancel();
+        this.running = null;
+    }
+
+    /**
+     * Solves a safe on the background thread, reporting the progress to the info
+     * label, and hands the solution to done on the FX thread. Any search already
+     * running is cancelled first, and its result thrown away.
+     * @param safe the safe to solve, which must not be changed while it is solved
+     * @param what what the search is for, like "Solve", for the info label
+     * @param done what to do with the solution, or empty if there is none
+     */
+    private void search(LasersModel safe, String what, Consumer<Optional<LasersModel>> done){
+        abandon();
+        SearchLimit limit = new SearchLimit(this.timeoutMillis, this.maxNodes);
+        this.running = limit;
+        gui.info.setText(what + ": searching...");
+        long start = System.nanoTime();
+        long[] last = {start, 0};
+        ScheduledFuture<?> progress = searcher.scheduleAtFixedRate(() -> {
+            //nodes per second since the last report
+            long now = System.nanoTime();
+            long nodes = limit.getProgressNodes();
+            long rate = (nodes - last[1]) * 1_000_000_000L / Math.max(1, now - last[0]);
+            last[0] = now;
+            last[1] = nodes;
+            String text = what + ": " + nodes + " nodes, " + rate + " nodes/sec, depth " + limit.getProgressDepth();
+            Platform.runLater(() -> {
+                //a report that arrives after the search is over is stale
+                if(this.running == limit){
+                    gui.info.setText(text);
+                }
+            });
+        }, PROGRESS_MILLIS, PROGRESS_MILLIS, TimeUnit.MILLISECONDS);
+        searcher.execute(() -> {
+            Optional<LasersModel> sol = Optional.empty();
+            RuntimeException failure = null;
+            try {
+                sol = cache.solve(safe, limit);
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                progress.cancel(false);
+            }
+            Optional<LasersModel> result = sol;
+            RuntimeException error = failure;
+            //the model and the view are only touched on the FX thread
+            Platform.runLater(() -> {
+                //a search that was replaced by a newer one has nothing to say
+                if(this.running != limit){
+                    return;
+                }
+                this.running = null;
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if(error != null){
+                    gui.info.setText(what + " failed: " + error);
+                }
+                else if(limit.isCancelled()){
+                    gui.info.setText(what + " stopped after " + limit.getNodes() + " nodes.");
+                }
+                else if(limit.isStopped()){
+                    gui.info.setText(what + " gave up after " + limit.getNodes() + " nodes in "
+                            + String.format("%.1f", seconds) + " seconds.");
+                }
+                else {
+                    done.accept(result);
+                }
+            });
+        });
+    }
+
     /**
      * The check function for the check button.
      * Checks the validity of the model, and reflects on the view whether or not the model is a correct solution.
@@ -44,14 +181,7 @@ public class ControllerGUI {
         //checks if the model is valid
         if(!gui.model.verify()){
             //if not look make the first block that causes it to not be invalid red.
-            GridPane safeGrid = (GridPane) gui.background.getCenter();
-            Button errorRec = (Button) getNode(gui.model.verifyRow,gui.model.verifyCol,safeGrid);
-            if(model.getblock(gui.model.verifyRow,gui.model.verifyCol).getCharToDisplay()=='.'){
-                Image img = new Image(getClass().getResourceAsStream("resources/red.png"));
-                ImageView imgView = new ImageView(img);
-                errorRec.setGraphic(imgView);
-            }
-            gui.setButtonBackground(errorRec,"red.png");
+            gui.showError(gui.model.verifyRow,gui.model.verifyCol);
         }
         //inform the user of the result
         gui.info.setText(model.output);
@@ -65,20 +195,42 @@ public class ControllerGUI {
      * @param safeConfig The safe configuration to attempt to solve.
      */
     public void solve(SafeConfig safeConfig){
-        Backtracker bt = new Backtracker(false);
-        //attempt to solve the safe
-        Optional<Configuration> sol = bt.solve(safeConfig);
-        //if there is a solution, show it on the view
-        if(sol.isPresent()){
-            SafeConfig solConfig = (SafeConfig) sol.get();
-            this.model = solConfig.getSafe();
-            gui.model = this.model;
-            gui.updateGUISafe();
-        }
-        //if not, inform the user.
-        else {
-            gui.info.setText(gui.filename.substring(gui.filename.lastIndexOf('\\')+1) + " has no solution.");
+        //attempt to solve the safe in the background, or take its solution from the cache
+        search(safeConfig.getSafe(), "Solve", sol -> {
+            //if there is a solution, show it on the view
+            if(sol.isPresent()){
+                showSolution(sol.get());
+                gui.info.setText(gui.filename.substring(gui.filename.lastIndexOf('\\')+1) + " solved.");
+            }
+            //if not, inform the user.
+            else {
+                gui.info.setText(gui.filename.substring(gui.filename.lastIndexOf('\\')+1) + " has no solution.");
+            }
+        });
+    }
+
+    /**
+     * Changes the lasers of the safe on the view into those of a solution. The
+     * lasers are moved quietly and then placed together, so the view hears of
+     * one change and redraws only the tiles that changed.
+     * @param solution the solved safe
+     */
+    private void showSolution(LasersModel solution){
+        List<int[]> lasers = new ArrayList<>();
+        for(int r = 0; r < solution.getRows(); r++){
+            for(int c = 0; c < solution.getCols(); c++){
+                boolean wanted = solution.getblock(r,c).getCharToDisplay() == LasersModel.LASER;
+                boolean placed = gui.model.getblock(r,c).getCharToDisplay() == LasersModel.LASER;
+                if(placed && !wanted){
+                    gui.model.removeQuietly(r,c);
+                }
+                else if(wanted && !placed){
+                    lasers.add(new int[]{r, c});
+                }
+            }
         }
+        gui.model.placeAll(lasers.toArray(new int[lasers.size()][]));
+        this.model = gui.model;
     }
 
     /**
@@ -86,6 +238,8 @@ public class ControllerGUI {
      * @param safeConfig The current safe configuration to be replaced by the newly loaded one.
      */
     public void load(SafeConfig safeConfig){
+        //a search of the old safe has nothing to say about the new one
+        abandon();
         //open a file chooser to allow the user to select a file
         FileChooser fc = new FileChooser();
         fc.setTitle("Choose a safe file.");
@@ -112,6 +266,8 @@ public class ControllerGUI {
      * restart the safe without any input, and update the view to reflect that.
      */
     public void restart(){
+        //a search of the safe as it was has nothing to say any more
+        abandon();
         //remake the model
         try {
             model = new LasersModel(gui.filename);
@@ -125,71 +281,85 @@ public class ControllerGUI {
     }
 
     /**
-     * Sets the model to the next valid successor towards completion if it exists
+     * Sets the model to the next valid successor towards completion if it exists.
+     * A laser that can be deduced from the safe is given without searching, and
+     * the info label says which rule forced it; only when no rule applies is the
+     * safe solved to find the next laser.
      * @param safeConfig a safeConfiguration to find the successor for
      */
     public void hint(SafeConfig safeConfig){
-        //A Backtracker to find the full path returns to the List of configurations
-        Backtracker bt = new Backtracker(false);
-        List<Configuration> path = bt.solveWithPath(safeConfig);
-        //If the List is null that means no goal was reached and there wasn't a valid solution
-        //moving forward from the current configuration
-        if(path == null){
-            gui.info.setText("Not a part of a valid solution");
-            //gui.info.setText(model.output);
+        //a hint replaces whatever was being searched for
+        abandon();
+        LasersModel current = safeConfig.getSafe();
+        //A laser that must be in every solution, found by looking rather than searching
+        Optional<Deductions.Forced> forced = Deductions.nextForced(new SafeState(current));
+        if(forced.isPresent()){
+            Deductions.Forced laser = forced.get();
+            addHint(laser.getRow(), laser.getCol(), laser.getRule() + ": " + laser.getReason());
+            return;
         }
-        //This is the solution
-        else if(path.size() == 0){
-            gui.info.setText("Safe is fully verified!");
-        }
-        else {
-            SafeConfig next;
-            //Iterate through the path list to find the next addition of a laser
-            int i;
-            for (i = 0; i < path.size(); i++) {
-                next = (SafeConfig) path.get(i);
-                //Find the next configuration that is not identical to the starting laser.
-                if (!sameConfig(safeConfig, next)) {
-                    //Sets the model to the current safe from the next placed laser
-                    this.model = next.getSafe();
-                    gui.model = this.model;
-                    gui.info.setText("Laser added at: (" + next.getCurrentRow() + ", " + next.getCurrentCol() + ")");
-                    gui.updateGUISafe();
-                    break;
+        //A solution that keeps the lasers already placed, searched for in the background
+        //or taken from the cache if it was asked for before
+        search(current, "Hint", sol -> {
+            //The safe may have been changed while the search ran, and the hint would undo that
+            if(!isUnchanged(current)){
+                gui.info.setText("The safe changed while searching; ask for a hint again.");
+                return;
+            }
+            //If there is no solution there is no valid way forward from the current configuration
+            if(!sol.isPresent()){
+                gui.info.setText("Not a part of a valid solution");
+                //gui.info.setText(model.output);
+                return;
+            }
+            //The next laser is the first one of the solution, going row by row, that is not placed yet
+            for(int r = 0; r < current.getRows(); r++){
+                for(int c = 0; c < current.getCols(); c++){
+                    if(sol.get().getblock(r,c).getCharToDisplay() == LasersModel.LASER
+                            && current.getblock(r,c).getCharToDisplay() != LasersModel.LASER){
+                        addHint(r, c, Deductions.Rule.SEARCH + ": " + Deductions.Rule.SEARCH.getDescription());
+                        return;
+                    }
                 }
             }
-        }
+            //This is the solution
+            gui.info.setText("Safe is fully verified!");
+        });
     }
 
     /**
-     * Sees if two SafeConfigs' safes are identical. A product of the backtracking algorithm that will
-     * leave tiles empty.
-     * @param config1 the first SafeConfig to compare
-     * @param config2 the second SafeConfig to compare
-     * @return true if they are identical, false otherwise
+     * Does the safe on the view still have the same lasers as a safe taken from it earlier?
+     * @param before the safe taken earlier
+     * @return true if no laser was added or removed since
      */
-    private boolean sameConfig(SafeConfig config1, SafeConfig config2){
-        //Get the safes from the two
-        LasersModel safe1 = config1.getSafe();
-        LasersModel safe2 = config2.getSafe();
-        int totalRows = safe1.getRows();
-        int totalCols = safe1.getCols();
-        //Just to check, if the dimensions are different there is no way the two are identical
-        if( totalRows != safe2.getRows() || totalCols != safe2.getCols() ){
+    private boolean isUnchanged(LasersModel before){
+        if(gui.model.getRows() != before.getRows() || gui.model.getCols() != before.getCols()){
             return false;
         }
-        //Check every tile and see if the character on the corresponding tiles are the same
-        for(int r = 0; r < totalRows; r++){
-            for(int c = 0; c < totalCols; c++){
-                if(safe1.getblock(r,c).getCharToDisplay() != safe2.getblock(r,c).getCharToDisplay()){
+        for(int r = 0; r < before.getRows(); r++){
+            for(int c = 0; c < before.getCols(); c++){
+                if((gui.model.getblock(r,c).getCharToDisplay() == LasersModel.LASER)
+                        != (before.getblock(r,c).getCharToDisplay() == LasersModel.LASER)){
                     return false;
                 }
             }
         }
-        //If they are all the same then the two safes are identical
         return true;
     }
 
+    /**
+     * Adds one more laser to the safe on the view, and says why it was added.
+     * @param r the row of the laser
+     * @param c the column of the laser
+     * @param why the rule that gave the laser
+     */
+    private void addHint(int r, int c, String why){
+        //Adds the next laser to the model, which tells the view which tiles to redraw
+        gui.model.add(r,c);
+        this.model = gui.model;
+        gui.info.setText("Laser added at: (" + r + ", " + c + ") - " + why);
+    }
+
     /**
      * get a node from the button grid.
      * @param row row to access
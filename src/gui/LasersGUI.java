@@ -4,6 +4,7 @@ import backtracking.Backtracker;
 import backtracking.Configuration;
 import backtracking.SafeConfig;
 import backtracking.SafeSolver;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
@@ -18,8 +19,8 @@ import javafx.stage.Stage;
 import java.io.FileNotFoundException;
 import java.util.*;
 
-import model.Block;
 import model.LasersModel;
+import model.SafeChange;
 
 /**
  * The main class that implements the JavaFX UI.   This class represents
@@ -49,13 +50,43 @@ public class LasersGUI extends Application implements Observer {
     /** The primary stage of the view */
     public Stage pStage;
 
+    /** The buttons of the safe grid by row and column, so a change only redraws its own tiles */
+    private Button[][] tiles;
+
+    /** The tiles changed since the last redraw, each one as row * cols + column */
+    private final BitSet dirty = new BitSet();
+
+    /** The tile check() showed in red, as row * cols + column, or -1 if none */
+    private int errorTile = -1;
+
+    /** The tile images, loaded once each */
+    private final Map<String, Image> images = new HashMap<>();
+
+    /** How long a solve or hint may search, and how many configurations it may look at, 0 for no limit */
+    private long searchTimeoutMillis = ControllerGUI.SEARCH_TIMEOUT_MILLIS;
+    private long searchMaxNodes = ControllerGUI.SEARCH_MAX_NODES;
+
+    /**
+     * Redraws the dirty tiles on the next frame pulse, then stops until there are more.
+     * However many changes come in between pulses, the tiles are redrawn once.
+     */
+    private final AnimationTimer redraw = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            redrawDirty();
+            stop();
+        }
+    };
+
     @Override
     public void init() throws Exception {
-        // the init method is run before start.  the file name is extracted
-        // here and then the model is created.
+        // the init method is run before start.  the file name and the search
+        // limits are extracted here and then the model is created.
         try {
             Parameters params = getParameters();
-            filename = params.getRaw().get(0);
+            filename = params.getUnnamed().get(0);
+            searchTimeoutMillis = limitParameter(params, "timeout", searchTimeoutMillis);
+            searchMaxNodes = limitParameter(params, "max-nodes", searchMaxNodes);
             this.model = new LasersModel(filename);
         } catch (FileNotFoundException fnfe) {
             System.out.println(fnfe.getMessage());
@@ -64,6 +95,34 @@ public class LasersGUI extends Application implements Observer {
         this.model.addObserver(this);
     }
 
+    /**
+     * Reads a search limit given as --name=value on the command line. A value
+     * that is not a whole number of at least 0 ends the program, as a missing
+     * safe file does.
+     *
+     * @param params the application's parameters
+     * @param name the name of the limit
+     * @param otherwise the limit if it is not given
+     * @return the limit, 0 for none
+     */
+    private static long limitParameter(Parameters params, String name, long otherwise) {
+        String value = params.getNamed().get(name);
+        if (value == null) {
+            return otherwise;
+        }
+        try {
+            long limit = Long.parseLong(value);
+            if (limit >= 0) {
+                return limit;
+            }
+        } catch (NumberFormatException nfe) {
+            //reported below, like a negative limit
+        }
+        System.out.println("Bad value for --" + name + ": " + value);
+        System.exit(-1);
+        return otherwise;
+    }
+
     /**
      * A private utility function for setting the background of a button to
      * an image in the resources subdirectory.
@@ -91,7 +150,7 @@ public class LasersGUI extends Application implements Observer {
         //Initialize the stage and the fields
         pStage = stage;
         Parameters params = getParameters();
-        filename = params.getRaw().get(0);
+        filename = params.getUnnamed().get(0);
         safeConfig = null;
         try {
             safeConfig = new SafeConfig(filename);
@@ -109,6 +168,7 @@ public class LasersGUI extends Application implements Observer {
         info = new Label(filename + " loaded.");
         background.setTop(info);
         ControllerGUI controller = new ControllerGUI(model,this);
+        controller.setSearchLimits(searchTimeoutMillis, searchMaxNodes);
         //make the button box
         HBox buttons = new HBox();
 
@@ -131,6 +191,12 @@ public class LasersGUI extends Application implements Observer {
             controller.solve((SafeConfig) safeConfig);
         });
 
+        //The stop button cancels a solve or hint that is still searching
+        Button Stop = new Button("Stop");
+        Stop.setOnAction(event -> {
+            controller.cancel();
+        });
+
         //the restart button and its functions
         Button Restart = new Button("Restart");
         Restart.setOnAction(event -> {
@@ -144,7 +210,7 @@ public class LasersGUI extends Application implements Observer {
         });
 
         //Add the buttons to the button node
-        buttons.getChildren().addAll(Check,Hint,Solve,Restart,Load);
+        buttons.getChildren().addAll(Check,Hint,Solve,Stop,Restart,Load);
         background.setBottom(buttons);
 
         Scene scene = new Scene(background);
@@ -160,24 +226,52 @@ public class LasersGUI extends Application implements Observer {
         primaryStage.show();
     }
 
+    /**
+     * The model tells the view which tiles changed. They are marked dirty and
+     * redrawn together on the next frame pulse.
+     */
     @Override
     public void update(Observable o, Object arg) {
+        //a model that has since been replaced is no longer shown
+        if(o != model || !(arg instanceof SafeChange) || tiles == null){
+            return;
+        }
+        SafeChange change = (SafeChange) arg;
+        for(int i = 0; i < change.size(); i++){
+            dirty.set(change.getRow(i) * model.getCols() + change.getCol(i));
+        }
+        //any change clears the tile check() showed in red
+        if(errorTile >= 0){
+            dirty.set(errorTile);
+            errorTile = -1;
+        }
+        if(!dirty.isEmpty()){
+            redraw.start();
+        }
     }
 
     /**
-     * The update method for the GUI.
+     * The update method for the GUI. Rebuilds the whole button grid, for a model
+     * that has just been loaded or replaced; changes to the model after that only
+     * redraw the tiles they change.
      */
     public void updateGUISafe(){
 
         //update the button grid so that it reflects the model
+        model.addObserver(this);
+        redraw.stop();
+        dirty.clear();
+        errorTile = -1;
         background.getChildren().removeAll();
         GridPane safeGrid = new GridPane();
-        for(int r=0;r<model.getSafe().length;r++){
+        tiles = new Button[model.getRows()][model.getCols()];
+        for(int r=0;r<model.getRows();r++){
             safeGrid.addRow(r);
-            for (int c=0;c<model.getSafe()[0].length;c++){
+            for (int c=0;c<model.getCols();c++){
                 safeGrid.addColumn(c);
-                Block currBlock = model.getblock(r,c);
-                safeGrid.add(makeButton(currBlock.getCharToDisplay(),c,r),c,r);
+                tiles[r][c] = new Button();
+                showTile(r,c);
+                safeGrid.add(tiles[r][c],c,r);
             }
         }
         //show the view
@@ -187,98 +281,98 @@ public class LasersGUI extends Application implements Observer {
     }
 
     /**
-     * Makes a button in the safe grid to reflect the type of block at location r,c in the safe oof the model
-     * @param displayVal The character at r,c in the safe of the model
+     * Redraws the tiles changed since the last redraw
+     */
+    private void redrawDirty(){
+        int cols = model.getCols();
+        for(int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)){
+            showTile(i / cols, i % cols);
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Shows the tile at (r,c) as failing the check, until the safe next changes
+     * @param r the row of the tile
+     * @param c the column of the tile
+     */
+    public void showError(int r, int c){
+        //a redraw still waiting for its pulse would paint over the red
+        redrawDirty();
+        redraw.stop();
+        Button button = tiles[r][c];
+        if(model.getblock(r,c).getCharToDisplay() == LasersModel.EMPTY){
+            button.setGraphic(new ImageView(image("red.png")));
+        }
+        setButtonBackground(button,"red.png");
+        errorTile = r * model.getCols() + c;
+    }
+
+    /**
+     * Makes the button at (r,c) in the safe grid reflect the type of block at (r,c) in the safe of the model
      * @param r the row to access in the safe of the model
      * @param c the column to access in the safe of the model
-     * @return A new button to reflect the type of block at location r,c in the safe oof the model
      */
-    private Button makeButton(char displayVal, int r, int c){
-        Button button = new Button();
-        Image Img = null;
+    private void showTile(int r, int c){
+        Button button = tiles[r][c];
+        String imgName = null;
         //make the button have a different image depending on the block type at r,c in the safe of the model
-        switch (displayVal){
+        switch (model.getblock(r,c).getCharToDisplay()){
             case '.':
-                Img = new Image(getClass().getResourceAsStream("resources/white.png"));
+                imgName = "white.png";
                 button.setOnMouseClicked(event -> {
-                    Image ImgTest = new Image(getClass().getResourceAsStream("resources/laser.png"));
-                    model.add(c,r);
-                    updateGUISafe();
-                    ImageView test = new ImageView(ImgTest);
-                    button.setGraphic(test);
+                    model.add(r,c);
                     info.setText(model.output);
                 });
                 break;
             case '*':
-                Img = new Image(getClass().getResourceAsStream("resources/beam.png"));
+                imgName = "beam.png";
                 button.setOnMouseClicked(event -> {
-                    Image ImgTest = new Image(getClass().getResourceAsStream("resources/laser.png"));
-                    model.add(c,r);
-                    updateGUISafe();
-                    ImageView test = new ImageView(ImgTest);
-                    button.setGraphic(test);
-                    info.setText(model.output);
-                });
-                break;
-            case 'X':
-                Img = new Image(getClass().getResourceAsStream("resources/pillarX.png"));
-                button.setOnMouseClicked(event -> {
-                    model.add(c,r);
+                    model.add(r,c);
                     info.setText(model.output);
                 });
                 break;
             case 'L':
-                Img = new Image(getClass().getResourceAsStream("resources/laser.png"));
+                imgName = "laser.png";
                 button.setOnMouseClicked(event -> {
-                    Image ImgTest = new Image(getClass().getResourceAsStream("resources/white.png"));
-                    model.remove(c,r);
-                    updateGUISafe();
-                    ImageView test = new ImageView(ImgTest);
-                    button.setGraphic(test);
+                    model.remove(r,c);
                     info.setText(model.output);
                 });
                 break;
-            case '0':
-                Img = new Image(getClass().getResourceAsStream("resources/pillar0.png"));
+            //the pillars; a laser cannot be added to one, and the model says so
+            case 'X':
+                imgName = "pillarX.png";
                 button.setOnMouseClicked(event -> {
-                    model.add(c,r);
+                    model.add(r,c);
                     info.setText(model.output);
                 });
                 break;
+            case '0':
             case '1':
-                Img = new Image(getClass().getResourceAsStream("resources/pillar1.png"));
-                button.setOnMouseClicked(event -> {
-                    model.add(c,r);
-                    info.setText(model.output);
-                });
-                break;
             case '2':
-                Img = new Image(getClass().getResourceAsStream("resources/pillar2.png"));
-                button.setOnMouseClicked(event -> {
-                    model.add(c,r);
-                    info.setText(model.output);
-                });
-                break;
             case '3':
-                Img = new Image(getClass().getResourceAsStream("resources/pillar3.png"));
-                button.setOnMouseClicked(event -> {
-                    model.add(c,r);
-                    info.setText(model.output);
-                });
-                break;
             case '4':
-                Img = new Image(getClass().getResourceAsStream("resources/pillar4.png"));
+                imgName = "pillar" + model.getblock(r,c).getCharToDisplay() + ".png";
                 button.setOnMouseClicked(event -> {
-                    model.add(c,r);
+                    model.add(r,c);
                     info.setText(model.output);
                 });
                 break;
         }
         //make the image of the button shown
-        ImageView Icon = new ImageView(Img);
+        ImageView Icon = new ImageView(image(imgName));
         button.setGraphic(Icon);
         setButtonBackground(button,"white.png");
-        return button;
+    }
+
+    /**
+     * An image from the resources subdirectory, loaded the first time it is asked for
+     * @param imgName the name of the image file
+     * @return the image
+     */
+    private Image image(String imgName){
+        return images.computeIfAbsent(imgName,
+                name -> new Image(getClass().getResourceAsStream("resources/" + name)));
     }
 
 }
@@ -0,0 +1,58 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * This is the main class for converting safe files into a binary SafeCorpus.
+ * Every safe of every file given is added to the corpus, in order. A directory
+ * given adds every file in it.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class ConvertSafes {
+    private static final String USAGE = "Usage: java model.ConvertSafes corpus-file safe-file|dir...";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        // start the clock
+        double start = System.currentTimeMillis();
+
+        int files = 0;
+        try (SafeCorpus.Writer corpus = new SafeCorpus.Writer(Paths.get(args[0]))) {
+            for (int i = 1; i < args.length; i++) {
+                File given = new File(args[i]);
+                File[] inputs = given.isDirectory() ? given.listFiles(File::isFile) : new File[]{given};
+                if (inputs == null) {
+                    System.out.println("Could not list " + given);
+                    continue;
+                }
+                Arrays.sort(inputs);
+                for (File input : inputs) {
+                    try {
+                        SafeParser parser = new SafeParser(input.getPath());
+                        while (parser.hasNext()) {
+                            corpus.add(parser.next());
+                        }
+                        files++;
+                    } catch (IllegalArgumentException iae) {
+                        //not a safe file, or a malformed one; the safes before the problem are kept
+                        System.out.println("Skipped the rest of " + iae.getMessage());
+                    }
+                }
+            }
+            System.out.println("Wrote " + corpus.size() + " safes from " + files + " files to " + args[0]);
+        }
+
+        // compute the elapsed time
+        System.out.println("Elapsed time: " +
+                (System.currentTimeMillis() - start)/1000.0 + " seconds.");
+    }
+}
@@ -1,9 +1,10 @@
 package model;
 
-import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Observable;
-import java.util.Scanner;
 
 /**
  * @author Daniel K Jones
@@ -27,35 +28,36 @@ public class LasersModel extends Observable {
     /** the 2 dimensional array representation of the safe */
     private Block[][] safe;
 
-    public LasersModel(String filename) throws FileNotFoundException {
-        File inputFile = new File(filename);
-        Scanner in = new Scanner(inputFile);
-        int counter = 0;
-        while(in.hasNextLine()){
-            String line = in.nextLine();
-            char[] rawLine = line.toCharArray();
-            String[] rawLineString = line.split(" ");
-
-            if(counter==0){
-                this.rows = Integer.parseInt(rawLineString[0]);
-                this.cols = Integer.parseInt(rawLineString[1]);
-                safe = new Block[rows][cols];
-            }
+    /**
+     * The visibility segments of the safe. A segment is a run of non-pillar tiles in
+     * one row or column, which is exactly what a laser in it can see. Pillars never
+     * move, so the segment of every tile and the extents of every segment are worked
+     * out once on load, and only the number of lasers in each segment changes.
+     * Pillar tiles are in segment -1.
+     */
+    private int[][] rowSegment;
+    private int[][] colSegment;
+    //the first and last column of each row segment, and first and last row of each column segment
+    private int[] rowSegStart, rowSegEnd;
+    private int[] colSegStart, colSegEnd;
+    //the number of lasers in each segment
+    private int[] rowSegLasers;
+    private int[] colSegLasers;
 
-            //This else if statement makes sure that we only pay attention to the useful information in the file.
-            else if(counter<=rows){
-                int lineIndex = 0;
-                //The raw line includes spaces, the arrays should be without space characters
-                for(int chr = 0; chr < rawLine.length; chr++){
-                    if(rawLine[chr] != ' '){
-                        //lineInfo[lineIndex++] = rawLine[chr];
-                        this.safe[counter-1][lineIndex++] = new Block(rawLine[chr]);
-                    }
-                }
-            }
-            counter+=1;
-        }
-        in.close();
+    /**
+     * The tiles whose displayed character changed since the observers were last told,
+     * each one as row * cols + column. The quiet methods leave their changes here, so
+     * the next announced change includes them.
+     */
+    private BitSet changed;
+
+    /**
+     * A constructor to make a LasersModel from the first safe in a safe file.
+     * @param filename the safe file
+     * @throws FileNotFoundException if the file is not found
+     */
+    public LasersModel(String filename) throws FileNotFoundException {
+        this(SafeParser.readFirst(filename));
     }
 
     /**
@@ -65,6 +67,7 @@ public class LasersModel extends Observable {
         this.rows = other.rows;
         this.cols = other.cols;
         this.safe = new Block[this.rows][this.cols];
+        this.changed = new BitSet(this.rows * this.cols);
         //Go through once and place the pillars of the safe and the empty spots of the safe. Not lasers.
         for(int r = 0; r < this.rows; r++){
             for(int c = 0; c < this.cols; c++){
@@ -80,19 +83,62 @@ public class LasersModel extends Observable {
 
             }
         }
+        //The pillars are the same, so the segments are too. Only the laser counts are new
+        this.rowSegment = other.rowSegment;
+        this.colSegment = other.colSegment;
+        this.rowSegStart = other.rowSegStart;
+        this.rowSegEnd = other.rowSegEnd;
+        this.colSegStart = other.colSegStart;
+        this.colSegEnd = other.colSegEnd;
+        this.rowSegLasers = new int[other.rowSegLasers.length];
+        this.colSegLasers = new int[other.colSegLasers.length];
         //Go through once more and add the lasers. This in turn will add the beams without creating
         //issues
         for(int r = 0; r < this.rows; r++){
             for(int c = 0; c < this.cols; c++) {
                 char blockChar = other.safe[r][c].getCharToDisplay();
                 if (blockChar == LASER) {
-                    //add a laser to this position of the safe
-                    this.add(r, c);
+                    //add a laser to this position of the safe, with no message for a copy
+                    this.addQuietly(r, c);
                 }
             }
         }
 
         this.output = other.output;
+        //A new model is shown whole, so nothing has changed yet
+        this.changed.clear();
+    }
+
+    /**
+     * A constructor to make a LasersModel from a grid of safe characters. Pillars and
+     * empty spots are copied, and lasers are added so that their beams are in place.
+     * @param grid the characters of the safe, indexed by row then column
+     */
+    public LasersModel(char[][] grid){
+        this.rows = grid.length;
+        this.cols = grid.length == 0 ? 0 : grid[0].length;
+        this.safe = new Block[this.rows][this.cols];
+        this.changed = new BitSet(this.rows * this.cols);
+        for(int r = 0; r < this.rows; r++){
+            for(int c = 0; c < this.cols; c++){
+                if(Character.isDigit(grid[r][c]) || grid[r][c] == PILLAR){
+                    this.safe[r][c] = new Block(grid[r][c]);
+                }
+                //Lasers and beams start out as empty spots
+                else{
+                    this.safe[r][c] = new Block(EMPTY);
+                }
+            }
+        }
+        buildSegments();
+        for(int r = 0; r < this.rows; r++){
+            for(int c = 0; c < this.cols; c++) {
+                if (grid[r][c] == LASER) {
+                    this.addQuietly(r, c);
+                }
+            }
+        }
+        this.changed.clear();
     }
 
 
@@ -103,27 +149,57 @@ public class LasersModel extends Observable {
      * @return true if a laser was added, false if a laser was not added
      */
     public boolean add(int r,int c){
-        //Checks to made sure coordinates given are within range
-        if( r >= this.rows || r < 0 || c >= this.cols || c < 0) {
+        if(!addQuietly(r, c)) {
             output = "Error adding laser at: (" + r + ", " + c + ")";
             announceChange();
             return false;
         }
+        output = "Laser added at: (" + r + ", " + c + ")";
+        announceChange();
+        return true;
+    }
+
+    /**
+     * Adds a new laser like add, but without a message or telling the observers.
+     * This is for callers with no user interface, such as the solvers, which change
+     * the safe many times and only want to know whether each change was made.
+     * @param r the row to place a laser
+     * @param c the column to place a laser
+     * @return true if a laser was added, false if a laser was not added
+     */
+    public boolean addQuietly(int r,int c){
+        //Checks to made sure coordinates given are within range
+        if( r >= this.rows || r < 0 || c >= this.cols || c < 0) {
+            return false;
+        }
         //checks to make sure the spot isn't occupied by a pillar or laser already
         //will only add to empty spots or spots with a beam (although invalid)
-        else if( this.safe[r][c].getCharToDisplay() != EMPTY && this.safe[r][c].getCharToDisplay() != BEAM){
-            output = "Error adding laser at: (" + r + ", " + c + ")";
-            announceChange();
+        char blockChar = this.safe[r][c].getCharToDisplay();
+        if( blockChar != EMPTY && blockChar != BEAM){
             return false;
         }
         //Errors have been handled. Laser is valid to be added
-        else {
-            this.safe[r][c].addLaser(this.safe,r,c);
-            output = "Laser added at: (" + r + ", " + c + ")";
-            announceChange();
-            return true;
-        }
+        placeLaser(r, c);
+        return true;
+    }
 
+    /**
+     * Adds many lasers at once, telling the observers once at the end rather than
+     * once per laser.
+     * @param lasers the coordinates of the lasers, each one a {row, column} pair
+     * @return the number of lasers added; a laser that cannot be added is skipped
+     */
+    public int placeAll(int[][] lasers){
+        int placed = 0;
+        for(int[] laser : lasers){
+            if(addQuietly(laser[0], laser[1])){
+                placed++;
+            }
+        }
+        output = placed == lasers.length ? "Lasers added: " + placed
+                : "Lasers added: " + placed + " of " + lasers.length;
+        announceChange();
+        return placed;
     }
 
     /**
@@ -134,27 +210,34 @@ public class LasersModel extends Observable {
      * @return true if a laser was removed, false if a laser was not removed
      */
     public boolean remove(int r,int c){
-        //Checks to made sure coordinates given are within range
-        if( r >= this.rows || r < 0 || c >= this.cols || c < 0) {
+        if(!removeQuietly(r, c)) {
             output = "Error removing laser at: (" + r + ", " + c + ")";
             announceChange();
             return false;
         }
+        output = "Laser removed at: (" + r + ", " + c + ")";
+        announceChange();
+        return true;
+    }
+
+    /**
+     * Removes a laser like remove, but without a message or telling the observers.
+     * @param r row coordinate of laser to be removed
+     * @param c column coordinate of laser to be removed
+     * @return true if a laser was removed, false if a laser was not removed
+     */
+    public boolean removeQuietly(int r,int c){
+        //Checks to made sure coordinates given are within range
+        if( r >= this.rows || r < 0 || c >= this.cols || c < 0) {
+            return false;
+        }
         //Checks if there is actually a laser to be removed at the coordinates given
-        else if(this.safe[r][c].getCharToDisplay() != LASER){
-            output = "Error removing laser at: (" + r + ", " + c + ")";
-            announceChange();
+        if(this.safe[r][c].getCharToDisplay() != LASER){
             return false;
         }
         //There is in fact a laser to be removed
-        else {
-            this.safe[r][c].removeLaser(this.safe,r,c);
-            output = "Laser removed at: (" + r + ", " + c + ")";
-            announceChange();
-            return true;
-        }
-
-
+        takeLaser(r, c);
+        return true;
     }
 
     /**
@@ -166,25 +249,46 @@ public class LasersModel extends Observable {
      * @return True if the safe is valid, False if it is invalid
      */
     public boolean verify(){
+        int error = findError();
+        if(error >= 0){
+            verifyRow = error / this.cols;
+            verifyCol = error % this.cols;
+            output = "Error verifying at: (" + verifyRow + ", " + verifyCol + ")";
+            //System.out.println(output);
+            announceChange();
+            return false;
+        }
+        output = "Safe is fully verified!";
+        //System.out.println(output);
+        announceChange();
+        return true;
+    }
+
+    /**
+     * Verifies the safe like verify, but without a message or telling the observers,
+     * and without setting verifyRow and verifyCol.
+     * @return True if the safe is valid, False if it is invalid
+     */
+    public boolean isVerified(){
+        return findError() < 0;
+    }
+
+    /**
+     * Finds the first tile, in row major order, that breaks one of the rules verify checks
+     * @return the tile as row * cols + column, or -1 if the safe is valid
+     */
+    private int findError(){
         for(int r=0;r<safe.length;r++){
             for(int c=0;c<safe[r].length;c++){
                 if(safe[r][c].getCharToDisplay()==LASER){
                     if(!checkLaserValidity(r,c)){
-                        verifyRow = r;
-                        verifyCol = c;
-                        output = "Error verifying at: (" + r + ", " + c + ")";
-                        //System.out.println(output);
-                        announceChange();
-                        return false;
+                        return r * this.cols + c;
                     }
                 }
-                else if(safe[r][c].getCharToDisplay()==EMPTY){
-                    verifyRow = r;
-                    verifyCol = c;
-                    output = "Error verifying at: (" + r + ", " + c + ")";
-                    //System.out.println(output);
-                    announceChange();
-                    return false;
+                //Not a pillar, and neither of its segments has a laser to light it
+                else if(!isPillar(r,c) && rowSegLasers[rowSegment[r][c]] == 0
+                        && colSegLasers[colSegment[r][c]] == 0){
+                    return r * this.cols + c;
                 }
                 else if(Character.isDigit(safe[r][c].getCharToDisplay())){
                     int laserCounter =0;
@@ -209,72 +313,30 @@ public class LasersModel extends Observable {
                         }
                     }
                     if(laserCounter!=Character.getNumericValue(safe[r][c].getCharToDisplay())){
-                        verifyRow = r;
-                        verifyCol = c;
-                        output = "Error verifying at: (" + r + ", " + c + ")";
-                        //System.out.println(output);
-                        announceChange();
-                        return false;
+                        return r * this.cols + c;
                     }
                 }
             }
         }
-        output = "Safe is fully verified!";
-        //System.out.println(output);
-        announceChange();
-        return true;
+        return -1;
     }
 
     /**
      * Checks if a laser at a given coordinate does not conflict with any other lasers
-     * in the safe. Checks in all four directions if there is a laser is in sight. If
-     * there is a pillar in the way the laser is not in sight.
+     * in the safe. The lasers in sight are exactly the lasers in the row and column
+     * segments of the coordinate, which are counted, so this is a constant time lookup.
      * @param r the row coordinate for the laser
      * @param c the column coordinate for the laser
      * @return true if the laser is valid, false if it is not valid
      */
     public boolean checkLaserValidity(int r, int c){
-        //Checks up the rows in the same column
-        for(int i =r+1;i<this.safe.length;i++){
-            if (this.safe[i][c].getCharToDisplay() == LASER) {
-                return false;
-            }
-            else if(this.safe[i][c].getCharToDisplay() == PILLAR ||
-                    Character.isDigit(this.safe[i][c].getCharToDisplay())){
-                break;
-            }
-        }
-        //Checks down the rows in the same column
-        for(int i =r-1; i>=0;i--){
-            if (this.safe[i][c].getCharToDisplay() == LASER) {
-                return false;
-            }
-            else if(this.safe[i][c].getCharToDisplay() == PILLAR ||
-                    Character.isDigit(this.safe[i][c].getCharToDisplay())){
-                break;
-            }
-        }
-        //Checks up the columns in the same row
-        for(int i =c+1;i<this.safe[r].length;i++){
-            if (this.safe[r][i].getCharToDisplay() == LASER) {
-                return false;
-            }
-            else if(this.safe[r][i].getCharToDisplay() == PILLAR ||
-                    Character.isDigit(this.safe[r][i].getCharToDisplay())){
-                break;
-            }
-        }
-        //Checks down the columns in the same row
-        for(int i =c-1; i>=0;i--){
-            if (this.safe[r][i].getCharToDisplay() == LASER) {
-                return false;
-            }
-            else if(this.safe[r][i].getCharToDisplay() == PILLAR ||
-                    Character.isDigit(this.safe[r][i].getCharToDisplay())){
-                break;
-            }
+        if(isPillar(r,c)){
+            return true;
         }
-        return true;
+        //A laser at (r,c) is counted in both of its own segments
+        int self = this.safe[r][c].getCharToDisplay() == LASER ? 1 : 0;
+        return this.rowSegLasers[this.rowSegment[r][c]] - self == 0
+                && this.colSegLasers[this.colSegment[r][c]] - self == 0;
     }
 
     public boolean checkPillarValidity(int r, int c, int max){
@@ -323,40 +385,145 @@ public class LasersModel extends Observable {
      * @return A string representation of the safe
      */
     public String to_string(){
-        //New string to build off of for safe representation
-        String display = " ";
-
-        //The column coordinates
-        for(int i = 0; i < this.cols; i++){
-            //if the dimensions are double digits, reduce to the single digit spot
-            display = display.concat(" " + String.valueOf(i % 10));
+        //Room for the header lines, the divider and the rows, each about two characters per column
+        StringBuilder display = new StringBuilder((this.rows + 4) * (2 * this.cols + 8));
+        try {
+            new SafeRenderer().render(this, display);
+        } catch (IOException e) {
+            //a StringBuilder is never closed or full
+            throw new IllegalStateException(e);
         }
-        display = display.concat("\n  ");
+        return display.toString();
+    }
 
-        //The divider
-        for(int i = 0; i < (this.cols * 2) - 1; i++){
-            display = display.concat("-");
+    /**
+     * Works out the row and column segment of every tile and the extents of every segment.
+     * Called once the pillars are in place, before any lasers are added.
+     */
+    private void buildSegments(){
+        this.rowSegment = new int[this.rows][this.cols];
+        this.colSegment = new int[this.rows][this.cols];
+        //There are at most as many segments in a direction as there are tiles
+        int[] starts = new int[this.rows * this.cols + 1];
+        int[] ends = new int[this.rows * this.cols + 1];
+        int segments = 0;
+        for(int r = 0; r < this.rows; r++){
+            int start = 0;
+            for(int c = 0; c <= this.cols; c++){
+                if(c == this.cols || isPillar(r,c)){
+                    if(start < c){
+                        starts[segments] = start;
+                        ends[segments] = c - 1;
+                        for(int i = start; i < c; i++){
+                            this.rowSegment[r][i] = segments;
+                        }
+                        segments++;
+                    }
+                    if(c < this.cols){
+                        this.rowSegment[r][c] = -1;
+                    }
+                    start = c + 1;
+                }
+            }
         }
-        display = display.concat("\n");
-
-        //The body of the output
-        for(int row = 0; row < this.rows; row++){
-            //The row coordinate and divider
-            //if the dimensions are double digits, reduce to the single digit spot
-            display = display.concat(String.valueOf(row % 10) + "|");
-            //The actual safe representation accessed by row and column coordinates
-            for(int col = 0; col < this.cols; col++){
-                display = display.concat(String.valueOf(this.safe[row][col]));
-                if(col != this.cols - 1){
-                    display = display.concat(" ");
+        this.rowSegStart = Arrays.copyOf(starts, segments);
+        this.rowSegEnd = Arrays.copyOf(ends, segments);
+        this.rowSegLasers = new int[segments];
+
+        segments = 0;
+        for(int c = 0; c < this.cols; c++){
+            int start = 0;
+            for(int r = 0; r <= this.rows; r++){
+                if(r == this.rows || isPillar(r,c)){
+                    if(start < r){
+                        starts[segments] = start;
+                        ends[segments] = r - 1;
+                        for(int i = start; i < r; i++){
+                            this.colSegment[i][c] = segments;
+                        }
+                        segments++;
+                    }
+                    if(r < this.rows){
+                        this.colSegment[r][c] = -1;
+                    }
+                    start = r + 1;
                 }
             }
+        }
+        this.colSegStart = Arrays.copyOf(starts, segments);
+        this.colSegEnd = Arrays.copyOf(ends, segments);
+        this.colSegLasers = new int[segments];
+    }
+
+    /**
+     * Is the tile at (r,c) a pillar, numbered or not?
+     */
+    private boolean isPillar(int r, int c){
+        char blockChar = this.safe[r][c].getCharToDisplay();
+        return blockChar == PILLAR || Character.isDigit(blockChar);
+    }
 
-            display = display.concat("\n");
+    /**
+     * Puts a laser at (r,c) and a beam on every other tile of its two segments
+     */
+    private void placeLaser(int r, int c){
+        this.safe[r][c].setCharToDisplay(LASER);
+        this.changed.set(r * this.cols + c);
+        int rowSeg = this.rowSegment[r][c];
+        int colSeg = this.colSegment[r][c];
+        for(int i = this.rowSegStart[rowSeg]; i <= this.rowSegEnd[rowSeg]; i++){
+            if(i != c){
+                beam(r, i, true);
+            }
+        }
+        for(int i = this.colSegStart[colSeg]; i <= this.colSegEnd[colSeg]; i++){
+            if(i != r){
+                beam(i, c, true);
+            }
+        }
+        this.rowSegLasers[rowSeg]++;
+        this.colSegLasers[colSeg]++;
+    }
 
+    /**
+     * Takes the laser away from (r,c) along with its beams
+     */
+    private void takeLaser(int r, int c){
+        //If another laser is pointed at the spot, it now shows that laser's beam
+        this.safe[r][c].setCharToDisplay(this.rowSegLasers[this.rowSegment[r][c]] > 1
+                || this.colSegLasers[this.colSegment[r][c]] > 1 ? BEAM : EMPTY);
+        this.changed.set(r * this.cols + c);
+        int rowSeg = this.rowSegment[r][c];
+        int colSeg = this.colSegment[r][c];
+        for(int i = this.rowSegStart[rowSeg]; i <= this.rowSegEnd[rowSeg]; i++){
+            if(i != c){
+                beam(r, i, false);
+            }
         }
+        for(int i = this.colSegStart[colSeg]; i <= this.colSegEnd[colSeg]; i++){
+            if(i != r){
+                beam(i, c, false);
+            }
+        }
+        this.rowSegLasers[rowSeg]--;
+        this.colSegLasers[colSeg]--;
+    }
 
-        return display;
+    /**
+     * Adds or removes a beam on the tile at (r,c), noting the tile if it now shows something else
+     */
+    private void beam(int r, int c, boolean add){
+        Block block = this.safe[r][c];
+        char before = block.getCharToDisplay();
+        if(add){
+            block.addBeam();
+        }
+        else{
+            block.removeBeam();
+        }
+        if(block.getCharToDisplay() != before){
+            this.changed.set(r * this.cols + c);
+        }
     }
 
     /**
@@ -383,10 +550,13 @@ public class LasersModel extends Observable {
 
     /**
      * A utility method that indicates the model has changed and
-     * notifies observers
+     * notifies observers, passing them a SafeChange of the tiles that
+     * changed since they were last told
      */
     private void announceChange() {
+        SafeChange change = new SafeChange(this.changed, this.cols);
+        this.changed.clear();
         setChanged();
-        notifyObservers();
+        notifyObservers(change);
     }
 }
@@ -0,0 +1,71 @@
+package model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The tiles of a safe whose displayed character changed, passed to the observers
+ * of a LasersModel with each change. A laser added or removed changes its own tile
+ * and every tile its beams newly light or stop lighting, so a view only has to
+ * redraw these tiles. A change with no tiles, such as an error message, changed
+ * nothing on the safe.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SafeChange {
+    /** the changed tiles, each one as row * cols + column, in row major order */
+    private final int[] tiles;
+    private final int cols;
+
+    /**
+     * Constructor of a change from the tiles marked in a bitset
+     * @param changed the changed tiles, each one as row * cols + column
+     * @param cols the number of columns of the safe
+     */
+    SafeChange(BitSet changed, int cols){
+        this.tiles = changed.stream().toArray();
+        this.cols = cols;
+    }
+
+    /**
+     * getter function for the number of tiles that changed
+     */
+    public int size(){ return this.tiles.length; }
+
+    /**
+     * Did any tile change?
+     */
+    public boolean isEmpty(){ return this.tiles.length == 0; }
+
+    /**
+     * getter function for the row of a changed tile
+     * @param i which changed tile, from 0 to size() - 1
+     */
+    public int getRow(int i){ return this.tiles[i] / this.cols; }
+
+    /**
+     * getter function for the column of a changed tile
+     * @param i which changed tile, from 0 to size() - 1
+     */
+    public int getCol(int i){ return this.tiles[i] % this.cols; }
+
+    /**
+     * Did the tile at (r,c) change?
+     * @param r the row
+     * @param c the column
+     * @return true if the tile is one of the changed tiles
+     */
+    public boolean contains(int r, int c){
+        return Arrays.binarySearch(this.tiles, r * this.cols + c) >= 0;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder cells = new StringBuilder("Changed tiles:");
+        for(int i = 0; i < this.tiles.length; i++){
+            cells.append(" (").append(getRow(i)).append(", ").append(getCol(i)).append(")");
+        }
+        return cells.toString();
+    }
+}
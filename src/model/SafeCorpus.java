@@ -0,0 +1,344 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * A corpus of safes in a compact binary file, read through memory mappings
+ * so any safe can be taken out by its number without reading the rest.
+ *
+ * The file is laid out as:
+ *
+ *     magic "SAFC", version, number of safes, offset of the index   (4+4+4+8 bytes)
+ *     the safes, each its rows and columns (2 bytes each) and then
+ *         its tiles in row-major order, two tiles to a byte, high half first
+ *     the index, the offset of every safe                            (8 bytes each)
+ *
+ * A tile is stored as 0 for an empty tile, 1 for a pillar, 2 to 6 for a pillar
+ * numbered 0 to 4, and 7 for a laser. A 25x25 safe takes 317 bytes, about a
+ * quarter of its text form.
+ *
+ * A single mapping cannot be more than 2 GB, so the file is mapped in windows
+ * that start every WINDOW_STEP bytes. Each window runs on past the start of the
+ * next by WINDOW_OVERLAP, which is more than the biggest safe or index entry
+ * takes, so whatever starts in a window also ends in it and is read from that
+ * window alone.
+ *
+ * A SafeCorpus only ever reads its mappings at absolute positions, so one corpus
+ * may be read by many threads at once.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SafeCorpus {
+
+    /** the first bytes of every corpus file */
+    private static final int MAGIC = ('S' << 24) | ('A' << 16) | ('F' << 8) | 'C';
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    /** where the windows of the mapping start, and how far each runs into the next */
+    private static final long WINDOW_STEP = 1L << 30;
+    private static final long WINDOW_OVERLAP = 1L << 29;
+
+    /** the tile codes */
+    private static final int CODE_EMPTY = 0;
+    private static final int CODE_PILLAR = 1;
+    private static final int CODE_DIGIT = 2;
+    private static final int CODE_LASER = 7;
+
+    //The windows of the mapping, the i'th starting at i * WINDOW_STEP
+    private final MappedByteBuffer[] windows;
+    private final int count;
+    private final long index;
+
+    /**
+     * Opens a corpus file by mapping it.
+     *
+     * @param file the corpus file
+     * @throws IOException if it cannot be read, or is not a corpus file
+     */
+    public SafeCorpus(Path file) throws IOException {
+        long length;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r");
+             FileChannel channel = raf.getChannel()) {
+            length = channel.size();
+            this.windows = new MappedByteBuffer[(int) Math.max(1, (length + WINDOW_STEP - 1) / WINDOW_STEP)];
+            for (int w = 0; w < this.windows.length; w++) {
+                long start = w * WINDOW_STEP;
+                long size = Math.min(length - start, WINDOW_STEP + WINDOW_OVERLAP);
+                this.windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+        }
+        if (length < HEADER_SIZE || this.windows[0].getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a safe corpus");
+        }
+        if (this.windows[0].getInt(4) != VERSION) {
+            throw new IOException(file + " is corpus version " + this.windows[0].getInt(4) + ", not " + VERSION);
+        }
+        this.count = this.windows[0].getInt(8);
+        this.index = this.windows[0].getLong(12);
+        if (this.count < 0 || this.index < HEADER_SIZE || this.index + 8L * this.count > length) {
+            throw new IOException(file + " has a broken index");
+        }
+    }
+
+    /**
+     * Does a file start like a corpus file?
+     *
+     * @param file the file
+     * @return true if it starts with the corpus magic
+     */
+    public static boolean isCorpus(Path file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * getter function for the number of safes in the corpus
+     */
+    public int size() { return this.count; }
+
+    /**
+     * getter function for the number of rows of a safe
+     */
+    public int getRows(int i) {
+        long at = offset(i);
+        return window(at).getShort(inWindow(at));
+    }
+
+    /**
+     * getter function for the number of columns of a safe
+     */
+    public int getCols(int i) {
+        long at = offset(i);
+        return window(at).getShort(inWindow(at) + 2);
+    }
+
+    /**
+     * Takes the tiles of one safe out of the corpus.
+     *
+     * @param i the number of the safe, from 0
+     * @return its tiles, indexed by row then column
+     */
+    public char[][] getGrid(int i) {
+        //the whole safe is in the window it starts in
+        long offset = offset(i);
+        MappedByteBuffer bytes = window(offset);
+        int at = inWindow(offset);
+        int rows = bytes.getShort(at);
+        int cols = bytes.getShort(at + 2);
+        at += 4;
+        char[][] grid = new char[rows][cols];
+        for (int cell = 0; cell < rows * cols; cell++) {
+            int b = bytes.get(at + cell / 2);
+            int code = (cell % 2 == 0 ? b >> 4 : b) & 0xF;
+            grid[cell / cols][cell % cols] = decode(code);
+        }
+        return grid;
+    }
+
+    /**
+     * Takes one safe out of the corpus as a model.
+     *
+     * @param i the number of the safe, from 0
+     * @return the safe
+     */
+    public LasersModel get(int i) {
+        return new LasersModel(getGrid(i));
+    }
+
+    /**
+     * The offset of a safe in the file, from the index
+     */
+    private long offset(int i) {
+        if (i < 0 || i >= this.count) {
+            throw new IndexOutOfBoundsException("safe " + i + " of " + this.count);
+        }
+        long at = this.index + 8L * i;
+        return window(at).getLong(inWindow(at));
+    }
+
+    /**
+     * The window of the mapping that holds whatever starts at an offset of the file
+     */
+    private MappedByteBuffer window(long offset) {
+        return this.windows[(int) (offset / WINDOW_STEP)];
+    }
+
+    /**
+     * Where an offset of the file is in its window
+     */
+    private static int inWindow(long offset) {
+        return (int) (offset % WINDOW_STEP);
+    }
+
+    /**
+     * The tile of a code
+     */
+    private static char decode(int code) {
+        if (code == CODE_EMPTY) {
+            return LasersModel.EMPTY;
+        } else if (code == CODE_PILLAR) {
+            return LasersModel.PILLAR;
+        } else if (code == CODE_LASER) {
+            return LasersModel.LASER;
+        } else if (code >= CODE_DIGIT && code <= CODE_DIGIT + 4) {
+            return (char) ('0' + code - CODE_DIGIT);
+        }
+        throw new IllegalArgumentException("bad tile code " + code);
+    }
+
+    /**
+     * The code of a tile. Beams are not kept, as they follow from the lasers
+     */
+    private static int encode(char tile) {
+        if (tile == LasersModel.PILLAR) {
+            return CODE_PILLAR;
+        } else if (tile == LasersModel.LASER) {
+            return CODE_LASER;
+        } else if (tile >= '0' && tile <= '4') {
+            return CODE_DIGIT + tile - '0';
+        } else if (tile == LasersModel.EMPTY || tile == LasersModel.BEAM) {
+            return CODE_EMPTY;
+        }
+        throw new IllegalArgumentException("'" + tile + "' is not a tile");
+    }
+
+    /**
+     * Writes a corpus file, one safe at a time. The index is written on close.
+     */
+    public static class Writer implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long[] offsets = new long[1024];
+        private int count;
+        private long position = HEADER_SIZE;
+
+        /**
+         * Starts a new corpus file, replacing any file already there.
+         *
+         * @param path the corpus file
+         * @throws IOException if it cannot be written
+         */
+        public Writer(Path path) throws IOException {
+            this.file = new RandomAccessFile(path.toFile(), "rw");
+            this.file.setLength(0);
+            this.channel = this.file.getChannel();
+            this.channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * Adds a safe to the corpus.
+         *
+         * @param grid the tiles of the safe, indexed by row then column
+         * @throws IOException if it cannot be written
+         */
+        public void add(char[][] grid) throws IOException {
+            int rows = grid.length;
+            int cols = rows == 0 ? 0 : grid[0].length;
+            //this also keeps every safe shorter than WINDOW_OVERLAP, so it fits in one window
+            if (rows > Short.MAX_VALUE || cols > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("a safe can be at most " + Short.MAX_VALUE + " tiles across");
+            }
+            int size = 4 + (rows * cols + 1) / 2;
+            if (this.buffer.remaining() < size) {
+                flush();
+                if (this.buffer.capacity() < size) {
+                    this.buffer = ByteBuffer.allocate(size);
+                }
+            }
+            if (this.count == this.offsets.length) {
+                long[] bigger = new long[this.offsets.length * 2];
+                System.arraycopy(this.offsets, 0, bigger, 0, this.count);
+                this.offsets = bigger;
+            }
+            this.offsets[this.count++] = this.position;
+            this.position += size;
+
+            this.buffer.putShort((short) rows);
+            this.buffer.putShort((short) cols);
+            for (int cell = 0; cell < rows * cols; cell += 2) {
+                int high = encode(grid[cell / cols][cell % cols]);
+                int low = cell + 1 < rows * cols ? encode(grid[(cell + 1) / cols][(cell + 1) % cols]) : 0;
+                this.buffer.put((byte) ((high << 4) | low));
+            }
+        }
+
+        /**
+         * Adds a safe to the corpus, without its beams.
+         *
+         * @param safe the safe
+         * @throws IOException if it cannot be written
+         */
+        public void add(LasersModel safe) throws IOException {
+            char[][] grid = new char[safe.getRows()][safe.getCols()];
+            for (int r = 0; r < safe.getRows(); r++) {
+                for (int c = 0; c < safe.getCols(); c++) {
+                    grid[r][c] = safe.getblock(r, c).getCharToDisplay();
+                }
+            }
+            add(grid);
+        }
+
+        /**
+         * getter function for the number of safes added so far
+         */
+        public int size() { return this.count; }
+
+        /**
+         * Writes the index and the header, and closes the file.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                //the index follows the safes, through the same buffer
+                long indexOffset = this.position;
+                for (int i = 0; i < this.count; i++) {
+                    if (this.buffer.remaining() < 8) {
+                        flush();
+                    }
+                    this.buffer.putLong(this.offsets[i]);
+                }
+                flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(this.count).putLong(indexOffset);
+                header.flip();
+                writeFully(header, 0);
+            } finally {
+                this.file.close();
+            }
+        }
+
+        /**
+         * Writes out the safes buffered so far
+         */
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        /**
+         * Writes a whole buffer at a position of the file
+         */
+        private void writeFully(ByteBuffer data, long at) throws IOException {
+            while (data.hasRemaining()) {
+                at += this.channel.write(data, at);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package model;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the safes in a safe file. The bytes of the file are read straight from
+ * its channel, or mapped if the file is large, and each grid is built from
+ * them without making a string per line.
+ *
+ * A safe starts at a header line of exactly two positive numbers, its rows and
+ * columns, followed by one line per row with one character per tile, separated
+ * by spaces. Anything between safes, like the solutions after the safes in
+ * tests/, is skipped, so one file may hold any number of safes. A header is
+ * never indented, which keeps the indented column coordinates of a printed
+ * solution, such as a line of just "1 1" over columns 10 and 11, from being
+ * taken for the header of a safe.
+ *
+ * A grid with the wrong number of rows or tiles, or a tile that is not one of
+ * . X L * or a digit from 0 to 4, is reported with an IllegalArgumentException
+ * naming the line.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SafeParser implements Iterator<char[][]> {
+
+    /** files up to this size are read into memory, bigger ones are mapped */
+    private static final int MAP_THRESHOLD = 1 << 16;
+
+    private final String filename;
+    private final ByteBuffer bytes;
+    private final int limit;
+
+    //where the next line starts, and its line number
+    private int position;
+    private int line;
+
+    //the header of the next safe, found by hasNext(). rows is -1 before looking
+    private int rows = -1;
+    private int cols;
+
+    /**
+     * Initialize a new parser over the bytes of a file.
+     *
+     * @param filename the safe file
+     * @throws FileNotFoundException if the file does not exist or cannot be read
+     * @throws IOException if reading it fails
+     */
+    public SafeParser(String filename) throws IOException {
+        this.filename = filename;
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(filename + " is too big to be a safe file");
+            }
+            if (size > MAP_THRESHOLD) {
+                this.bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                this.bytes = ByteBuffer.allocate((int) size);
+                while (this.bytes.hasRemaining() && channel.read(this.bytes) >= 0) {
+                    //keep reading until the buffer is full
+                }
+                this.bytes.flip();
+            }
+        }
+        this.limit = this.bytes.limit();
+    }
+
+    /**
+     * Reads the first safe of a file.
+     *
+     * @param filename the safe file
+     * @return the tiles of the safe, indexed by row then column
+     * @throws FileNotFoundException if the file does not exist or cannot be read
+     */
+    public static char[][] readFirst(String filename) throws FileNotFoundException {
+        SafeParser parser = open(filename);
+        if (!parser.hasNext()) {
+            throw new IllegalArgumentException(filename + " has no safe in it");
+        }
+        return parser.next();
+    }
+
+    /**
+     * Reads every safe of a file.
+     *
+     * @param filename the safe file
+     * @return the safes, in the order they are in the file
+     * @throws FileNotFoundException if the file does not exist or cannot be read
+     */
+    public static List<LasersModel> readAll(String filename) throws FileNotFoundException {
+        List<LasersModel> safes = new ArrayList<>();
+        SafeParser parser = open(filename);
+        while (parser.hasNext()) {
+            safes.add(new LasersModel(parser.next()));
+        }
+        return safes;
+    }
+
+    /**
+     * Makes a parser, with the read errors other than a missing file unchecked
+     */
+    private static SafeParser open(String filename) throws FileNotFoundException {
+        try {
+            return new SafeParser(filename);
+        } catch (FileNotFoundException fnfe) {
+            throw fnfe;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Is there another safe in the file? Skips ahead to its header.
+     */
+    @Override
+    public boolean hasNext() {
+        while (this.rows < 0 && this.position < this.limit) {
+            int start = this.position;
+            int end = nextLine();
+            readHeader(start, end);
+        }
+        return this.rows >= 0;
+    }
+
+    /**
+     * Reads the next safe.
+     *
+     * @return the tiles of the safe, indexed by row then column
+     */
+    @Override
+    public char[][] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException(this.filename + " has no more safes");
+        }
+        char[][] grid = new char[this.rows][this.cols];
+        for (int r = 0; r < this.rows; r++) {
+            if (this.position >= this.limit) {
+                throw error("expected " + this.rows + " rows but the file ended after " + r);
+            }
+            int start = this.position;
+            int end = nextLine();
+            int c = 0;
+            for (int i = start; i < end; i++) {
+                byte b = this.bytes.get(i);
+                if (b == ' ' || b == '\t') {
+                    continue;
+                }
+                if (!isTile(b)) {
+                    throw error("'" + (char) b + "' is not a tile");
+                }
+                if (c == this.cols) {
+                    throw error("more than " + this.cols + " tiles in the row");
+                }
+                grid[r][c++] = (char) b;
+            }
+            if (c < this.cols) {
+                throw error("expected " + this.cols + " tiles but found " + c);
+            }
+        }
+        this.rows = -1;
+        return grid;
+    }
+
+    /**
+     * Moves past the line at the current position.
+     *
+     * @return where the line ends, not counting its line break
+     */
+    private int nextLine() {
+        int start = this.position;
+        int end = start;
+        while (end < this.limit && this.bytes.get(end) != '\n') {
+            end++;
+        }
+        this.position = end < this.limit ? end + 1 : end;
+        this.line++;
+        //a Windows line break
+        if (end > start && this.bytes.get(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Takes the rows and columns from a line if it is a header: exactly two positive
+     * numbers, the first of them at the start of the line.
+     */
+    private void readHeader(int start, int end) {
+        //the coordinate lines of a printed safe are indented, a header is not
+        if (start < end && (this.bytes.get(start) == ' ' || this.bytes.get(start) == '\t')) {
+            return;
+        }
+        int[] numbers = new int[2];
+        int found = 0;
+        int i = start;
+        while (i < end) {
+            byte b = this.bytes.get(i);
+            if (b == ' ' || b == '\t') {
+                i++;
+            } else if (b >= '0' && b <= '9' && found < 2) {
+                long value = 0;
+                while (i < end && this.bytes.get(i) >= '0' && this.bytes.get(i) <= '9') {
+                    value = value * 10 + (this.bytes.get(i) - '0');
+                    if (value > Integer.MAX_VALUE) {
+                        return;
+                    }
+                    i++;
+                }
+                numbers[found++] = (int) value;
+            } else {
+                return;
+            }
+        }
+        if (found == 2 && numbers[0] > 0 && numbers[1] > 0) {
+            this.rows = numbers[0];
+            this.cols = numbers[1];
+        }
+    }
+
+    /**
+     * Is a byte one of the tiles of a safe file?
+     */
+    private static boolean isTile(byte b) {
+        return b == LasersModel.EMPTY || b == LasersModel.PILLAR || b == LasersModel.LASER
+                || b == LasersModel.BEAM || (b >= '0' && b <= '4');
+    }
+
+    /**
+     * An error at the line just read
+     */
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(this.filename + ":" + this.line + ": " + message);
+    }
+}
@@ -0,0 +1,260 @@
+package model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Writes a safe as plain text, the way the PTUI shows it: a header of column
+ * coordinates, a divider, then each row after its row coordinate. The text is
+ * written a line at a time straight into an Appendable, such as a Writer or a
+ * StringBuilder, from one line buffer that is reused for every line, so writing
+ * a safe takes time in proportion to its size.
+ *
+ * Coordinates of more than one digit are written in full: the column header
+ * takes one line per digit, and the row coordinates are padded to the same width.
+ * A safe of at most 10 rows and 10 columns looks exactly as it always has.
+ * Every coordinate line is indented by the width of the row coordinates, so
+ * that SafeParser never takes one for the header of a safe.
+ *
+ * A viewport limits the writing to a window of rows and columns of the safe,
+ * and renderChanges writes only the rows that changed since the last time the
+ * safe was written, for a view that cannot afford to write it all every time.
+ *
+ * @author Daniel Jones
+ * @author Michael Johansen
+ */
+public class SafeRenderer {
+
+    /** the viewport: its first row and column, and how many of each it shows at most */
+    private int firstRow = 0;
+    private int firstCol = 0;
+    private int maxRows = Integer.MAX_VALUE;
+    private int maxCols = Integer.MAX_VALUE;
+
+    /** the buffer each line is put together in before it is written */
+    private char[] line = new char[64];
+
+    /**
+     * The tiles last written, row by row, and the window they came from, for
+     * renderChanges. shown is null until something has been written.
+     */
+    private char[] shown;
+    private int shownRow, shownCol, shownRows, shownCols;
+
+    /**
+     * Limits the writing to a window of the safe. A window that runs past the
+     * edge of the safe is cut off there.
+     * @param firstRow the first row to show
+     * @param firstCol the first column to show
+     * @param rows the most rows to show
+     * @param cols the most columns to show
+     */
+    public void setViewport(int firstRow, int firstCol, int rows, int cols){
+        if(firstRow < 0 || firstCol < 0){
+            throw new IllegalArgumentException("viewport must not start before the safe: " + firstRow + ", " + firstCol);
+        }
+        if(rows < 1 || cols < 1){
+            throw new IllegalArgumentException("viewport must show at least one tile: " + rows + "x" + cols);
+        }
+        this.firstRow = firstRow;
+        this.firstCol = firstCol;
+        this.maxRows = rows;
+        this.maxCols = cols;
+    }
+
+    /**
+     * Goes back to writing the whole safe
+     */
+    public void clearViewport(){
+        this.firstRow = 0;
+        this.firstCol = 0;
+        this.maxRows = Integer.MAX_VALUE;
+        this.maxCols = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Writes the safe, or the part of it in the viewport, with its coordinates.
+     * @param safe the safe to write
+     * @param out where to write it
+     * @throws IOException if out cannot be written to
+     */
+    public void render(LasersModel safe, Appendable out) throws IOException {
+        int rowEnd = rowEnd(safe);
+        int colEnd = colEnd(safe);
+        int labelWidth = digits(rowEnd - 1);
+        int colWidth = digits(colEnd - 1);
+        int cols = Math.max(0, colEnd - this.firstCol);
+        fit(labelWidth, cols);
+
+        //The column coordinates, one line per digit, most significant first
+        for(int place = colWidth - 1, power = pow10(place); place >= 0; place--, power /= 10){
+            int length = pad(0, labelWidth);
+            for(int c = this.firstCol; c < colEnd; c++){
+                this.line[length++] = ' ';
+                this.line[length++] = c >= power || place == 0 ? (char) ('0' + c / power % 10) : ' ';
+            }
+            this.line[length++] = '\n';
+            write(out, length);
+        }
+
+        //The divider
+        int length = pad(0, labelWidth + 1);
+        for(int i = 0; i < (cols * 2) - 1; i++){
+            this.line[length++] = '-';
+        }
+        this.line[length++] = '\n';
+        write(out, length);
+
+        //The body of the output
+        remember(rowEnd, colEnd);
+        for(int row = this.firstRow; row < rowEnd; row++){
+            writeRow(safe, row, colEnd, labelWidth, out);
+        }
+    }
+
+    /**
+     * Writes only the rows of the viewport that changed since the safe was last
+     * written by this renderer, each one with its row coordinate. If nothing has
+     * been written yet, or the safe or viewport is a different size, the whole
+     * safe is written as render does.
+     * @param safe the safe to write
+     * @param out where to write the changed rows
+     * @return the number of rows written
+     * @throws IOException if out cannot be written to
+     */
+    public int renderChanges(LasersModel safe, Appendable out) throws IOException {
+        int rowEnd = rowEnd(safe);
+        int colEnd = colEnd(safe);
+        if(this.shown == null || this.shownRow != this.firstRow || this.shownCol != this.firstCol
+                || this.shownRows != rowEnd - this.firstRow || this.shownCols != colEnd - this.firstCol){
+            render(safe, out);
+            return this.shownRows;
+        }
+        int labelWidth = digits(rowEnd - 1);
+        fit(labelWidth, this.shownCols);
+        int written = 0;
+        for(int row = this.firstRow; row < rowEnd; row++){
+            int at = (row - this.firstRow) * this.shownCols;
+            for(int c = this.firstCol; c < colEnd; c++, at++){
+                if(this.shown[at] != safe.getblock(row, c).getCharToDisplay()){
+                    writeRow(safe, row, colEnd, labelWidth, out);
+                    written++;
+                    break;
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes one row of the safe after its coordinate, and remembers its tiles
+     */
+    private void writeRow(LasersModel safe, int row, int colEnd, int labelWidth, Appendable out) throws IOException {
+        int length = pad(0, labelWidth - digits(row));
+        for(int power = pow10(digits(row) - 1); power > 0; power /= 10){
+            this.line[length++] = (char) ('0' + row / power % 10);
+        }
+        this.line[length++] = '|';
+        int at = (row - this.firstRow) * this.shownCols;
+        Block[] tiles = safe.getSafe()[row];
+        for(int col = this.firstCol; col < colEnd; col++){
+            char tile = tiles[col].getCharToDisplay();
+            this.shown[at++] = tile;
+            this.line[length++] = tile;
+            if(col != colEnd - 1){
+                this.line[length++] = ' ';
+            }
+        }
+        this.line[length++] = '\n';
+        write(out, length);
+    }
+
+    /**
+     * Makes room to remember the tiles of the viewport
+     */
+    private void remember(int rowEnd, int colEnd){
+        this.shownRow = this.firstRow;
+        this.shownCol = this.firstCol;
+        this.shownRows = Math.max(0, rowEnd - this.firstRow);
+        this.shownCols = Math.max(0, colEnd - this.firstCol);
+        if(this.shown == null || this.shown.length < this.shownRows * this.shownCols){
+            this.shown = new char[this.shownRows * this.shownCols];
+        }
+    }
+
+    /**
+     * Grows the line buffer, if need be, to fit the longest line of a window
+     * @param labelWidth the width of the row coordinates
+     * @param cols the number of columns shown
+     */
+    private void fit(int labelWidth, int cols){
+        int longest = labelWidth + 2 * cols + 2;
+        if(this.line.length < longest){
+            this.line = new char[2 * longest];
+        }
+    }
+
+    /**
+     * Puts spaces into the line buffer
+     * @return the length of the line so far
+     */
+    private int pad(int length, int spaces){
+        for(int i = 0; i < spaces; i++){
+            this.line[length++] = ' ';
+        }
+        return length;
+    }
+
+    /**
+     * Writes the first length characters of the line buffer
+     */
+    private void write(Appendable out, int length) throws IOException {
+        if(out instanceof Writer){
+            ((Writer) out).write(this.line, 0, length);
+        }
+        else if(out instanceof StringBuilder){
+            ((StringBuilder) out).append(this.line, 0, length);
+        }
+        else{
+            out.append(CharBuffer.wrap(this.line, 0, length));
+        }
+    }
+
+    /**
+     * The row after the last row of the viewport, cut off at the edge of the safe
+     */
+    private int rowEnd(LasersModel safe){
+        return (int) Math.min(safe.getRows(), (long) this.firstRow + this.maxRows);
+    }
+
+    /**
+     * The column after the last column of the viewport, cut off at the edge of the safe
+     */
+    private int colEnd(LasersModel safe){
+        return (int) Math.min(safe.getCols(), (long) this.firstCol + this.maxCols);
+    }
+
+    /**
+     * The number of digits of a coordinate, at least 1
+     */
+    private static int digits(int n){
+        int digits = 1;
+        while(n >= 10){
+            n /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * 10 to the power of n
+     */
+    private static int pow10(int n){
+        int power = 1;
+        for(int i = 0; i < n; i++){
+            power *= 10;
+        }
+        return power;
+    }
+}
@@ -19,12 +19,16 @@ public class ControllerPTUI  {
     /** The UI's connection to the model */
     private LasersModel model;
 
+    /** The view, which prints the safe */
+    private LasersPTUI view;
+
     /**
      * Construct the PTUI.  Create the model and initialize the view.
-     * @param model The laser model
+     * @param view The view, which holds the laser model
      */
-    public ControllerPTUI(LasersModel model) {
-        this.model = model;
+    public ControllerPTUI(LasersPTUI view) {
+        this.view = view;
+        this.model = view.getModel();
     }
 
     /**
@@ -49,7 +53,7 @@ public class ControllerPTUI  {
         }
 
         //print out the initial safe configuration
-        System.out.print(this.model.to_string());
+        this.view.displaySafe();
         //User input prompt
         LasersPTUI.displayPrompt();
 
@@ -80,7 +84,17 @@ public class ControllerPTUI  {
                         if(input!=standardInput){
                             System.out.println(userInput);
                         }
-                        System.out.print(this.model.to_string());
+                        this.view.displaySafe();
+                        LasersPTUI.displayPrompt();
+                        break;
+                    case 'c':
+                        //Prints the command given if given by a file.
+                        if(input!=standardInput){
+                            System.out.println(userInput);
+                        }
+                        this.view.setChangesOnly(!this.view.isChangesOnly());
+                        System.out.println(this.view.isChangesOnly() ? "Printing only the changed rows"
+                                : "Printing the whole safe");
                         LasersPTUI.displayPrompt();
                         break;
                     case 'h':
@@ -118,6 +132,39 @@ public class ControllerPTUI  {
                         }
                         this.model.verify();
                         break;
+                    case 'w':
+                        commands = userInput.split(" ");
+                        //Prints the command given if given by a file.
+                        if(input!=standardInput){
+                            System.out.println(userInput);
+                        }
+                        //no coordinates shows the whole safe again
+                        if (commands.length == 1) {
+                            this.view.showWholeSafe();
+                        }
+                        else if (commands.length == 5) {
+                            try {
+                                int row = Integer.parseInt(commands[1]);
+                                int col = Integer.parseInt(commands[2]);
+                                //the window must start on a tile of the safe
+                                if (row >= this.model.getRows() || col >= this.model.getCols()) {
+                                    throw new IllegalArgumentException("window outside the safe");
+                                }
+                                this.view.setWindow(row, col, Integer.parseInt(commands[3]), Integer.parseInt(commands[4]));
+                            } catch (IllegalArgumentException e) {
+                                System.out.println("Incorrect window");
+                                LasersPTUI.displayPrompt();
+                                break;
+                            }
+                        }
+                        else {
+                            System.out.println("Incorrect window");
+                            LasersPTUI.displayPrompt();
+                            break;
+                        }
+                        this.view.displaySafe();
+                        LasersPTUI.displayPrompt();
+                        break;
                     default:
                         //Prints the command given if given by a file.
                         if(input!=standardInput){
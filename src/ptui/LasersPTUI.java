@@ -1,10 +1,14 @@
 package ptui;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.Observable;
 import java.util.Observer;
 
 import model.LasersModel;
+import model.SafeChange;
+import model.SafeRenderer;
 
 /**
  * This class represents the view portion of the plain text UI.  It
@@ -19,6 +23,15 @@ public class LasersPTUI implements Observer {
     /** The UI's connection to the model */
     private LasersModel model;
 
+    /** Writes the safe to the output, a window of it if one is set */
+    private final SafeRenderer renderer = new SafeRenderer();
+
+    /** The output the safe is written to, flushed after each safe so it keeps its place among the messages */
+    private final PrintWriter out = new PrintWriter(System.out);
+
+    /** Should an update print only the rows that changed, rather than the whole safe? */
+    private boolean changesOnly = false;
+
     /**
      * Construct the PTUI.  Create the model and initialize the view.
      * @param filename the safe file name
@@ -36,16 +49,49 @@ public class LasersPTUI implements Observer {
 
     public LasersModel getModel() { return this.model; }
 
+    /**
+     * Shows only a window of the safe from now on.
+     * @param row the first row to show
+     * @param col the first column to show
+     * @param rows the most rows to show
+     * @param cols the most columns to show
+     */
+    public void setWindow(int row, int col, int rows, int cols){
+        this.renderer.setViewport(row, col, rows, cols);
+    }
+
+    /**
+     * Shows the whole safe from now on.
+     */
+    public void showWholeSafe(){
+        this.renderer.clearViewport();
+    }
+
+    /**
+     * Sets whether an update prints only the rows that changed
+     * @param changesOnly true for only the changed rows, false for the whole safe
+     */
+    public void setChangesOnly(boolean changesOnly){
+        this.changesOnly = changesOnly;
+    }
+
+    /**
+     * getter function for whether an update prints only the rows that changed
+     */
+    public boolean isChangesOnly(){ return this.changesOnly; }
+
     /**
      * Prints out a manual for the commands of the safe
      */
     public static void displayHelp(){
         System.out.println("a|add r c: Add laser to (r,c)\n" +
+                "c|changes: Toggle printing only the changed rows after each command\n" +
                 "d|display: Display safe\n" +
                 "h|help: Print this help message\n" +
                 "q|quit: Exit program\n" +
                 "r|remove r c: Remove laser from (r,c)\n" +
-                "v|verify: Verify safe correctness");
+                "v|verify: Verify safe correctness\n" +
+                "w|window [r c rows cols]: Display only rows by cols from (r,c), or the whole safe");
 
     }
 
@@ -53,7 +99,24 @@ public class LasersPTUI implements Observer {
      * Prints out the safe
      */
     public void displaySafe(){
-        System.out.print(this.model.to_string());
+        try {
+            this.renderer.render(this.model, this.out);
+        } catch (IOException e) {
+            //a PrintWriter keeps its errors to itself
+        }
+        this.out.flush();
+    }
+
+    /**
+     * Prints out the rows of the safe that changed since it was last printed
+     */
+    public void displayChanges(){
+        try {
+            this.renderer.renderChanges(this.model, this.out);
+        } catch (IOException e) {
+            //a PrintWriter keeps its errors to itself
+        }
+        this.out.flush();
     }
 
     /**
@@ -72,7 +135,13 @@ public class LasersPTUI implements Observer {
 
     @Override
     public void update(Observable o, Object arg) {
-        displaySafe();
+        if(!this.changesOnly){
+            displaySafe();
+        }
+        //a change of no tiles, such as an error, leaves every row as it was
+        else if(!(arg instanceof SafeChange) || !((SafeChange) arg).isEmpty()){
+            displayChanges();
+        }
         displayMessage();
         displayPrompt();
     }